@@ -0,0 +1,91 @@
+package bg.sofia.uni.fmi.mjt.spotify.benchmark;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+/**
+ * This class is responsible for the synthetic catalog the benchmarks run the server code against.
+ * The server works with the files of the working directory, so the catalog is written there
+ * and the directory has to be empty beforehand.
+ */
+final class Catalog {
+    static final String[] WORDS = {
+        "love", "night", "heart", "fire", "dream", "rain", "summer", "baby", "dance", "light",
+        "river", "shadow", "gold", "blue", "wild", "road", "home", "star", "ocean", "city",
+        "angel", "storm", "sweet", "lonely", "crazy", "forever", "midnight", "paradise", "thunder", "silver",
+        "morning", "winter"
+    };
+
+    private final int songs;
+
+    Catalog(int songs) {
+        this.songs = songs;
+    }
+
+    int size() {
+        return songs;
+    }
+
+    /**
+     * @return the name of the song as it is played: [artist]-[song name]
+     */
+    String song(int song) {
+        return artist(song) + "-" + songName(song);
+    }
+
+    /**
+     * Writes the songs file, empty users and playlists files and a short .wav file for each of the first songs,
+     * which are the only ones that can be played.
+     */
+    void write(int playableSongs) throws IOException {
+        try (Stream<Path> files = Files.list(Path.of("."))) {
+            if (files.findAny().isPresent()) {
+                throw new IllegalStateException("The benchmark must be run from an empty directory");
+            }
+        }
+
+        try (BufferedWriter writer = Files.newBufferedWriter(Path.of("songs.txt"))) {
+            for (int i = 0; i < songs; i++) {
+                writer.write(artist(i) + "--" + songName(i));
+                writer.newLine();
+            }
+        }
+        Files.createFile(Path.of("users.txt"));
+        Files.createFile(Path.of("playlists.txt"));
+
+        AudioFormat format = new AudioFormat(44100f, 16, 2, true, false);
+        byte[] samples = new byte[format.getFrameSize() * 1024];
+        for (int i = 0; i < playableSongs; i++) {
+            AudioInputStream audio = new AudioInputStream(new ByteArrayInputStream(samples), format, 1024);
+            AudioSystem.write(audio, AudioFileFormat.Type.WAVE, Path.of(song(i) + ".wav").toFile());
+        }
+    }
+
+    /**
+     * Deletes everything from the working directory, including the files written by the server.
+     */
+    static void delete() throws IOException {
+        try (Stream<Path> files = Files.list(Path.of("."))) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    private String artist(int song) {
+        return "artist" + song % Math.max(1, songs / 10);
+    }
+
+    private static String songName(int song) {
+        return WORDS[song % WORDS.length] + " " + WORDS[song / WORDS.length % WORDS.length] + " " + song;
+    }
+}
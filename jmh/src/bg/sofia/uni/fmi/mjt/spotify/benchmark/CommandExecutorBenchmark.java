@@ -0,0 +1,176 @@
+package bg.sofia.uni.fmi.mjt.spotify.benchmark;
+
+import bg.sofia.uni.fmi.mjt.spotify.command.CommandExecutor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class is responsible for measuring {@link CommandExecutor#execute} with JMH over a synthetic
+ * catalog: search, top, show-playlist and add-song-to on a large playlist, register, login and an unknown command.
+ * A number of sessions play songs during the setup, so "top" has statistics to rank.
+ * <p>
+ * The executor works with the files of the working directory, so the benchmark must be run from
+ * an empty directory, which is what "gradle :jmh:jmh" does. The catalog is written there during the setup
+ * of each fork and everything is deleted when the fork is done.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dspotify.wal.durability=ASYNC")
+public class CommandExecutorBenchmark {
+    private static final String[] WORDS = Catalog.WORDS;
+    private static final int PLAYING_SESSIONS = 100;
+    private static final int ADDED_SONGS = 1000;
+    private static final String PLAYLIST = "benchmark";
+    private static final String USER = "benchmark@gmail.com";
+
+    @Param({"10000", "100000"})
+    private int songs;
+
+    @Param({"5000"})
+    private int playlistSize;
+
+    private Catalog catalog;
+    private CommandExecutor executor;
+    private long session;
+    private int next;
+    private int iteration;
+    private int added;
+    private int registered;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        if (playlistSize > songs || PLAYING_SESSIONS > songs || ADDED_SONGS > songs) {
+            throw new IllegalArgumentException("The catalog is too small for the playlist");
+        }
+
+        catalog = new Catalog(songs);
+        catalog.write(PLAYING_SESSIONS);
+        executor = new CommandExecutor();
+        session = executor.openSession();
+        execute(session, "register " + USER + " parola");
+        execute(session, "create-playlist " + PLAYLIST);
+        for (int i = 0; i < playlistSize; i++) {
+            execute(session, "add-song-to " + PLAYLIST + " " + catalog.song(i));
+        }
+        for (int i = 0; i < PLAYING_SESSIONS; i++) {
+            long listener = executor.openSession();
+            execute(listener, "login " + USER + " parola");
+            execute(listener, "play " + catalog.song(i));
+        }
+    }
+
+    /**
+     * Every iteration adds songs to a playlist of its own, so add-song-to never finds the song already added.
+     */
+    @Setup(Level.Iteration)
+    public void setUpIteration() {
+        iteration++;
+        added = 0;
+        execute(session, "create-playlist added" + iteration);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        executor.close();
+        Catalog.delete();
+    }
+
+    /**
+     * Returns the next index of a word, so consecutive invocations do not search for the same thing.
+     */
+    private int nextWord() {
+        next = (next + 1) % WORDS.length;
+        return next;
+    }
+
+    @Benchmark
+    public String searchOneWord() {
+        return executor.execute(session, "search " + WORDS[nextWord()]);
+    }
+
+    @Benchmark
+    public String searchThreeWords() {
+        int word = nextWord();
+        return executor.execute(session,
+                "search " + WORDS[word] + " " + WORDS[(word + 7) % WORDS.length] + " " + word);
+    }
+
+    @Benchmark
+    public String searchSubstring() {
+        return executor.execute(session, "search " + WORDS[nextWord()].substring(1));
+    }
+
+    @Benchmark
+    public String top() {
+        return executor.execute(session, "top 10");
+    }
+
+    @Benchmark
+    public String topAll() {
+        return executor.execute(session, "top 10 all");
+    }
+
+    @Benchmark
+    public String showPlaylist() {
+        return executor.execute(session, "show-playlist " + PLAYLIST);
+    }
+
+    /**
+     * Measured in batches of a fixed size, so an iteration never runs out of songs to add.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 3, batchSize = ADDED_SONGS)
+    @Measurement(iterations = 5, batchSize = ADDED_SONGS)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public String addSongTo() {
+        return executor.execute(session, "add-song-to added" + iteration + " " + catalog.song(added++));
+    }
+
+    /**
+     * Hashes the password of a new user every time, so it measures the full cost of the password hashing.
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public String register() {
+        return executor.execute(session, "register user" + registered++ + "@gmail.com parola");
+    }
+
+    /**
+     * Logs in and out again, so every login after the first one is answered from the verified logins cache.
+     */
+    @Benchmark
+    public String loginVerified() {
+        executor.execute(session, "logout");
+        return executor.execute(session, "login " + USER + " parola");
+    }
+
+    @Benchmark
+    public String unknownCommand() {
+        return executor.execute(session, "playlist " + nextWord());
+    }
+
+    private void execute(long sessionId, String command) {
+        String reply = executor.execute(sessionId, command);
+        if (reply.startsWith("[ Unknown command ]") || reply.startsWith("[ There is no such song ]")) {
+            throw new IllegalStateException("Setup command " + command + " failed: " + reply.strip());
+        }
+    }
+}
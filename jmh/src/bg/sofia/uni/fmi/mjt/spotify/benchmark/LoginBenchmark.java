@@ -0,0 +1,118 @@
+package bg.sofia.uni.fmi.mjt.spotify.benchmark;
+
+import bg.sofia.uni.fmi.mjt.spotify.security.Authenticator;
+import bg.sofia.uni.fmi.mjt.spotify.security.PasswordHasher;
+import bg.sofia.uni.fmi.mjt.spotify.security.VerifiedCredentials;
+import bg.sofia.uni.fmi.mjt.spotify.storage.UserRepository;
+import bg.sofia.uni.fmi.mjt.spotify.storage.WriteAheadLog;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * This class is responsible for measuring the login throughput under a storm of concurrent logins,
+ * with one benchmark thread per core, each logging in repeatedly as one of the registered users.
+ * The storm is run with the verified logins cache disabled and enabled.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(Threads.MAX)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoginBenchmark {
+
+    @Param({"100"})
+    private int users;
+
+    @Param({"100000"})
+    private int iterations;
+
+    @Param({"false", "true"})
+    private boolean verifiedCache;
+
+    private Path directory;
+    private WriteAheadLog wal;
+    private Authenticator authenticator;
+
+    /**
+     * The user a benchmark thread logs in as, each thread takes the next one.
+     */
+    @State(Scope.Thread)
+    public static class Client {
+        private static int clients;
+        private String email;
+
+        @Setup(Level.Trial)
+        public void setUp(LoginBenchmark benchmark) {
+            synchronized (Client.class) {
+                email = email(clients++ % benchmark.users);
+            }
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("login-benchmark");
+        wal = new WriteAheadLog(directory.resolve("spotify.wal"), WriteAheadLog.Durability.ASYNC, 2);
+        UserRepository repository = new UserRepository(directory.resolve("users.txt"), wal);
+        wal.recover(repository);
+        PasswordHasher hasher = new PasswordHasher(iterations);
+
+        Authenticator registration = new Authenticator(repository, hasher, new VerifiedCredentials(1, 0));
+        IntStream.range(0, users).parallel().forEach(user -> register(registration, email(user)));
+
+        VerifiedCredentials verified = verifiedCache
+                ? new VerifiedCredentials(users, TimeUnit.MINUTES.toMillis(5))
+                : new VerifiedCredentials(1, 0);
+        authenticator = new Authenticator(repository, hasher, verified);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        wal.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Benchmark
+    public boolean login(Client client) throws IOException {
+        return authenticator.login(client.email, "parola");
+    }
+
+    private static String email(int user) {
+        return "user" + user + "@gmail.com";
+    }
+
+    private static void register(Authenticator authenticator, String email) {
+        try {
+            authenticator.register(email, "parola");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
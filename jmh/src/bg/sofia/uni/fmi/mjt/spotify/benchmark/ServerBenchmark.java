@@ -0,0 +1,163 @@
+package bg.sofia.uni.fmi.mjt.spotify.benchmark;
+
+import bg.sofia.uni.fmi.mjt.spotify.ServerConfig;
+import bg.sofia.uni.fmi.mjt.spotify.ServerMode;
+import bg.sofia.uni.fmi.mjt.spotify.SpotifyServer;
+import bg.sofia.uni.fmi.mjt.spotify.streaming.Frames;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class is responsible for measuring the round trip of a command through a running server:
+ * every benchmark thread is a client with a connection of its own, which sends search, top and show-playlist
+ * one at a time and waits for each reply like the real client does. The sample time mode reports
+ * the latency percentiles next to the average.
+ * <p>
+ * The server is started in the benchmark JVM and works with the files of the working directory,
+ * so the benchmark must be run from an empty directory, which is what "gradle :jmh:jmh" does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Threads(16)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Dspotify.wal.durability=ASYNC", "-Dspotify.password.iterations=1000"})
+public class ServerBenchmark {
+    private static final String[] QUERIES = {"hello", "love", "night", "ad", "bitter fire", "summer rain"};
+    private static final int CONNECT_ATTEMPTS = 50;
+    private static final long CONNECT_RETRY_MILLIS = 100;
+
+    @Param({"REACTOR", "THREAD_PER_CONNECTION"})
+    private ServerMode mode;
+
+    @Param({"10000"})
+    private int songs;
+
+    @Param({"7788"})
+    private int port;
+
+    private Catalog catalog;
+    private SpotifyServer server;
+    private Thread serverThread;
+
+    /**
+     * A connected client, registered as a user of its own with a playlist of its own.
+     */
+    @State(Scope.Thread)
+    public static class Client {
+        private static final AtomicInteger CLIENTS = new AtomicInteger();
+
+        private Socket socket;
+        private DataInputStream in;
+        private OutputStream out;
+        private String name;
+        private int next;
+
+        @Setup(Level.Trial)
+        public void setUp(ServerBenchmark benchmark) throws IOException, InterruptedException {
+            name = "client" + CLIENTS.getAndIncrement();
+            socket = connect(benchmark.port);
+            socket.setTcpNoDelay(true);
+            in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            out = socket.getOutputStream();
+            send("register " + name + "@gmail.com parola");
+            send("create-playlist " + name);
+            for (int i = 0; i < 10; i++) {
+                send("add-song-to " + name + " " + benchmark.catalog.song(i));
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            out.write(("disconnect" + System.lineSeparator()).getBytes(StandardCharsets.UTF_8));
+            socket.close();
+        }
+
+        /**
+         * Sends the command and skips the frames up to its reply.
+         *
+         * @return the length of the reply
+         */
+        int send(String command) throws IOException {
+            out.write((command + System.lineSeparator()).getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            while (true) {
+                byte type = in.readByte();
+                int length = in.readInt();
+                in.skipNBytes(length);
+                if (type == Frames.REPLY) {
+                    return length;
+                }
+            }
+        }
+
+        private static Socket connect(int port) throws IOException, InterruptedException {
+            for (int attempt = 1; ; attempt++) {
+                try {
+                    return new Socket("localhost", port);
+                } catch (ConnectException e) {
+                    if (attempt == CONNECT_ATTEMPTS) {
+                        throw e;
+                    }
+                    Thread.sleep(CONNECT_RETRY_MILLIS);
+                }
+            }
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        catalog = new Catalog(songs);
+        catalog.write(0);
+        ServerConfig defaults = ServerConfig.defaults(port);
+        server = new SpotifyServer(new ServerConfig(port, mode, defaults.streamingMode(), defaults.reactorThreads(),
+                defaults.commandExecutor(), defaults.maxConnections(), defaults.idleTimeout()));
+        serverThread = new Thread(server::start, "spotify-benchmark-server");
+        serverThread.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException, InterruptedException {
+        server.stop();
+        serverThread.join();
+        Catalog.delete();
+    }
+
+    @Benchmark
+    public int search(Client client) throws IOException {
+        return client.send("search " + QUERIES[client.next++ % QUERIES.length]);
+    }
+
+    @Benchmark
+    public int top(Client client) throws IOException {
+        return client.send("top 10");
+    }
+
+    @Benchmark
+    public int showPlaylist(Client client) throws IOException {
+        return client.send("show-playlist " + client.name);
+    }
+}
@@ -0,0 +1,63 @@
+package bg.sofia.uni.fmi.mjt.spotify;
+
+import bg.sofia.uni.fmi.mjt.spotify.streaming.StreamingMode;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The settings of a {@link SpotifyServer}.
+ *
+ * @param port            the port the server listens on
+ * @param mode            how the connections are handled
+ * @param streamingMode   how audio bytes are moved to the sockets
+ * @param reactorThreads  the number of selector threads sharing the connections
+ * @param commandExecutor runs the commands in {@link ServerMode#REACTOR} mode, so blocking file I/O never
+ *                        stalls a selector thread. It is shut down together with the server.
+ * @param maxConnections  the number of open connections above which the server stops accepting new ones
+ * @param idleTimeout     how long, in milliseconds, a connection may stay without any I/O before it is closed
+ *                        in {@link ServerMode#REACTOR} mode
+ */
+public record ServerConfig(int port, ServerMode mode, StreamingMode streamingMode, int reactorThreads,
+                           ExecutorService commandExecutor, int maxConnections, long idleTimeout) {
+    private static final int DEFAULT_MAX_CONNECTIONS = 10_000;
+    private static final long DEFAULT_IDLE_TIMEOUT_SECONDS = 300;
+
+    public ServerConfig {
+        if (reactorThreads < 1) {
+            throw new IllegalArgumentException("At least one reactor thread is required");
+        }
+        if (maxConnections < 1) {
+            throw new IllegalArgumentException("At least one connection should be allowed");
+        }
+    }
+
+    /**
+     * One selector thread and one command thread per core.
+     */
+    public static ServerConfig defaults(int port) {
+        int cores = Runtime.getRuntime().availableProcessors();
+        return new ServerConfig(port, ServerMode.REACTOR, StreamingMode.MAPPED, cores,
+                Executors.newFixedThreadPool(cores), DEFAULT_MAX_CONNECTIONS,
+                TimeUnit.SECONDS.toMillis(DEFAULT_IDLE_TIMEOUT_SECONDS));
+    }
+
+    /**
+     * Reads the overrides of the defaults from the system properties
+     * spotify.mode, spotify.streaming, spotify.reactors, spotify.max.connections and spotify.idle.timeout.seconds.
+     */
+    public static ServerConfig fromSystemProperties(int port) {
+        ServerConfig defaults = defaults(port);
+        ServerMode mode = ServerMode.valueOf(System.getProperty("spotify.mode", defaults.mode().name()));
+        StreamingMode streamingMode =
+                StreamingMode.valueOf(System.getProperty("spotify.streaming", defaults.streamingMode().name()));
+        int reactorThreads = Integer.getInteger("spotify.reactors", defaults.reactorThreads());
+        int maxConnections = Integer.getInteger("spotify.max.connections", defaults.maxConnections());
+        long idleTimeout = TimeUnit.SECONDS.toMillis(Long.getLong("spotify.idle.timeout.seconds",
+                TimeUnit.MILLISECONDS.toSeconds(defaults.idleTimeout())));
+
+        return new ServerConfig(port, mode, streamingMode, reactorThreads, defaults.commandExecutor(),
+                maxConnections, idleTimeout);
+    }
+}
@@ -0,0 +1,16 @@
+package bg.sofia.uni.fmi.mjt.spotify;
+
+/**
+ * How the server handles its connections.
+ */
+public enum ServerMode {
+    /**
+     * Non-blocking I/O multiplexed by a few selector threads.
+     */
+    REACTOR,
+
+    /**
+     * Blocking I/O with a thread per connection, virtual when the runtime supports them.
+     */
+    THREAD_PER_CONNECTION
+}
@@ -1,29 +1,226 @@
 package bg.sofia.uni.fmi.mjt.spotify;
 
+import bg.sofia.uni.fmi.mjt.spotify.jfr.PlaybackEvent;
+import bg.sofia.uni.fmi.mjt.spotify.playback.AudioRingBuffer;
+
 import javax.sound.sampled.DataLine;
 import javax.sound.sampled.AudioFormat;
-import javax.sound.sampled.AudioInputStream;
 import javax.sound.sampled.AudioSystem;
 import javax.sound.sampled.SourceDataLine;
-import javax.sound.sampled.UnsupportedAudioFileException;
 import javax.sound.sampled.LineUnavailableException;
-import java.io.File;
-import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 
 /**
- * This class is responsible for the audio playback
+ * This class is responsible for the audio playback.
+ * The PCM data is streamed by the server and fed chunk by chunk by the client's network listener into
+ * a lock-free {@link AudioRingBuffer}, which the playback thread drains into the audio line.
+ * <p>
+ * Playback starts only once the buffer holds the prefill amount of audio. If the line runs dry anyway
+ * (an underrun), the underrun is counted, the prefill is doubled and playback waits until the buffer
+ * is refilled. After a long enough stretch of smooth playback the prefill is halved again, down to
+ * its initial value.
+ * <p>
+ * The next song of the play queue can be appended with {@link #queueNext} if it has the same format.
+ * Its audio then continues in the same buffer and on the same open audio line, without any gap.
  */
 public class SongPlayer implements Runnable {
-
-    private String reply;
-    private boolean stopped;
+    private static final long BUFFER_MILLIS = Long.getLong("spotify.player.buffer.millis", 3000);
+    private static final long PREFILL_MILLIS = Long.getLong("spotify.player.prefill.millis", 250);
+    private static final long WRITE_MILLIS = 20;
+    private static final long SMOOTH_MILLIS = 30_000;
+    private static final long WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final AudioFormat format;
+    private final AudioRingBuffer buffer;
+    private final int frameSize;
+    private final int initialPrefill;
+    private final int maxPrefill;
+    private volatile int prefill;
+    private volatile int underruns;
+    private volatile boolean finished;
+    private volatile boolean stopped;
+    private volatile int songs;
+    private volatile Exception failure;
+    private boolean closing;
 
     public SongPlayer(String reply) {
-        this.reply = reply;
+        this(reply, BUFFER_MILLIS, PREFILL_MILLIS);
+    }
+
+    /**
+     * @param bufferMillis  how much audio can be buffered ahead of playback
+     * @param prefillMillis how much audio is buffered before playback starts
+     */
+    public SongPlayer(String reply, long bufferMillis, long prefillMillis) {
+        this.format = parseFormat(reply);
+        this.frameSize = Math.max(1, format.getFrameSize());
+        this.buffer = new AudioRingBuffer(bytes(bufferMillis));
+        this.maxPrefill = buffer.capacity() / 4 * 3 / frameSize * frameSize;
+        this.initialPrefill = Math.min(bytes(prefillMillis), maxPrefill);
+        this.prefill = initialPrefill;
+        this.songs = 1;
+    }
+
+    /**
+     * Waits while the buffer is full, which in turn stops reading from the socket
+     * and lets TCP flow control slow the server down.
+     */
+    public void feed(byte[] chunk) throws InterruptedException {
+        int offset = 0;
+        while (offset < chunk.length && !stopped) {
+            int written = buffer.write(chunk, offset, chunk.length - offset);
+            if (written == 0) {
+                LockSupport.parkNanos(WAIT_NANOS);
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            }
+            offset += written;
+        }
+    }
+
+    public void finish() {
+        finished = true;
+    }
+
+    /**
+     * Appends the next song, which is fed after the current one has been finished.
+     *
+     * @return false if the song has a different format or the player is already closing its audio line,
+     * in which case the song needs a player of its own
+     */
+    public synchronized boolean queueNext(String reply) {
+        if (closing || stopped || !format.matches(parseFormat(reply))) {
+            return false;
+        }
+        finished = false;
+        songs++;
+        return true;
+    }
+
+    /**
+     * @return how many songs were played on the audio line of this player
+     */
+    public int songs() {
+        return songs;
+    }
+
+    /**
+     * @return how many times the audio line ran dry before the song was fully received
+     */
+    public int underruns() {
+        return underruns;
+    }
+
+    /**
+     * @return how many bytes are currently buffered before playback starts or resumes
+     */
+    public int prefill() {
+        return prefill;
+    }
+
+    /**
+     * @return why the audio line couldn't be opened or null if the player didn't fail
+     */
+    public Exception failure() {
+        return failure;
     }
 
+    /**
+     * Plays the buffered audio until it is finished or stopped. If the audio line can't be opened,
+     * the failure is kept for the caller to report and the player counts as stopped,
+     * so {@link #feed} doesn't wait for room that will never be made.
+     */
     @Override
     public void run() {
+        try {
+            DataLine.Info info = new DataLine.Info(SourceDataLine.class, format);
+            SourceDataLine dataLine = (SourceDataLine) AudioSystem.getLine(info);
+            dataLine.open(format);
+            PlaybackEvent event = new PlaybackEvent(format.toString());
+            event.begin();
+
+            play(dataLine, event);
+
+            if (!stopped) {
+                dataLine.drain();
+            }
+            dataLine.stop();
+            dataLine.close();
+            event.stopped(stopped);
+            event.underruns(underruns);
+            event.songs(songs);
+            event.commit();
+        } catch (LineUnavailableException | IllegalArgumentException e) {
+            failure = e;
+        } finally {
+            stopped = true;
+        }
+    }
+
+    public void stop() {
+        stopped = true;
+    }
+
+    private void play(SourceDataLine dataLine, PlaybackEvent event) {
+        byte[] chunk = new byte[Math.max(frameSize, bytes(WRITE_MILLIS))];
+        int smoothBytes = bytes(SMOOTH_MILLIS);
+        long playedSmoothly = 0;
+        boolean buffering = true;
+        while (!stopped) {
+            boolean received = finished;
+            int available = buffer.available();
+            if (buffering) {
+                if (available < prefill && !received) {
+                    LockSupport.parkNanos(WAIT_NANOS);
+                    continue;
+                }
+                buffering = false;
+                dataLine.start();
+            }
+
+            int length = Math.min(chunk.length, available / frameSize * frameSize);
+            if (length == 0) {
+                if (received && close()) {
+                    return;
+                }
+                if (dataLine.available() >= dataLine.getBufferSize()) {
+                    underruns++;
+                    prefill = Math.min(prefill * 2, maxPrefill);
+                    playedSmoothly = 0;
+                    buffering = true;
+                } else {
+                    LockSupport.parkNanos(WAIT_NANOS);
+                }
+                continue;
+            }
+
+            buffer.read(chunk, 0, length);
+            dataLine.write(chunk, 0, length);
+            event.played(length);
+            playedSmoothly += length;
+            if (playedSmoothly >= smoothBytes) {
+                prefill = Math.max(initialPrefill, prefill / 2 / frameSize * frameSize);
+                playedSmoothly = 0;
+            }
+        }
+    }
+
+    /**
+     * @return false if the next song was queued meanwhile
+     */
+    private synchronized boolean close() {
+        closing = finished;
+        return closing;
+    }
+
+    private int bytes(long millis) {
+        long frames = (long) (format.getFrameRate() * millis / 1000);
+        return (int) Math.min(Integer.MAX_VALUE / 2, Math.max(1, frames) * Math.max(1, format.getFrameSize()));
+    }
+
+    private static AudioFormat parseFormat(String reply) {
         reply = reply.replace(System.lineSeparator(), "");
         int encodingIndex = reply.indexOf("Encoding:");
         final AudioFormat.Encoding encoding =
@@ -53,39 +250,6 @@ public class SongPlayer implements Runnable {
         int bigEndianIndex = reply.indexOf("BigEndian:");
         final boolean bigEndian = Boolean.parseBoolean(reply.substring(bigEndianIndex + 10, reply.indexOf(" ")));
 
-        String song = reply.substring(reply.indexOf(" ") + 1);
-
-        AudioFormat format =
-                new AudioFormat(encoding, sampleRate, sampleSizeInBits, channels, frameSize, frameRate, bigEndian);
-
-        try {
-            DataLine.Info info = new DataLine.Info(SourceDataLine.class, format);
-            SourceDataLine dataLine = (SourceDataLine) AudioSystem.getLine(info);
-            dataLine.open();
-            AudioInputStream stream = AudioSystem.getAudioInputStream(new File(song + ".wav"));
-
-            dataLine.start();
-            byte[] buffer = new byte[1024];
-            int bytesRead = 0;
-            int allBytes = stream.available();
-            while (bytesRead < allBytes && !stopped) {
-                int numBytesToRead = 512;
-                int numBytesRead = stream.read(buffer, 0, numBytesToRead);
-                if (numBytesRead == -1) {
-                    break;
-                }
-                bytesRead += numBytesRead;
-                dataLine.write(buffer, 0, numBytesRead);
-            }
-
-            dataLine.stop();
-            dataLine.close();
-        } catch (LineUnavailableException | IOException | UnsupportedAudioFileException e) {
-            throw new RuntimeException("There is a problem with playing your song", e);
-        }
-    }
-
-    public void stop() {
-        stopped = true;
+        return new AudioFormat(encoding, sampleRate, sampleSizeInBits, channels, frameSize, frameRate, bigEndian);
     }
 }
@@ -1,35 +1,47 @@
 package bg.sofia.uni.fmi.mjt.spotify;
 
 import bg.sofia.uni.fmi.mjt.spotify.exceptions.ExceptionLogger;
+import bg.sofia.uni.fmi.mjt.spotify.streaming.Frames;
 
-import java.io.BufferedReader;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.PrintWriter;
-import java.net.InetSocketAddress;
-import java.nio.channels.Channels;
-import java.nio.channels.SocketChannel;
+import java.io.OutputStreamWriter;
+import java.net.Socket;
 import java.nio.charset.StandardCharsets;
 import java.util.Scanner;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
 
 public class SpotifyClient {
 
     private static final String SERVER_HOST = "localhost";
     private static final int SERVER_PORT = 7777;
+    private static final String DISCONNECTED = "[ Disconnected from server ]";
+    private static final String PLAYBACK_FAILED = "[ There is a problem with playing your song ]";
 
-    private SongPlayer player;
+    private volatile SongPlayer player;
+    private Thread playerThread;
+    private final BlockingQueue<String> replies;
     private ExceptionLogger logger;
 
     public SpotifyClient() {
         logger = new ExceptionLogger();
+        replies = new LinkedBlockingQueue<>();
     }
 
     private void startClient() {
-        try (SocketChannel socketChannel = SocketChannel.open();
-                BufferedReader reader = new BufferedReader(Channels.newReader(socketChannel, StandardCharsets.UTF_8));
-                PrintWriter writer = new PrintWriter(Channels.newWriter(socketChannel, StandardCharsets.UTF_8), true);
+        try (Socket socket = new Socket(SERVER_HOST, SERVER_PORT);
+                PrintWriter writer = new PrintWriter(
+                        new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), true);
                 Scanner scanner = new Scanner(System.in)) {
 
-            socketChannel.connect(new InetSocketAddress(SERVER_HOST, SERVER_PORT));
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            Thread listenerThread = new Thread(() -> listen(in));
+            listenerThread.setDaemon(true);
+            listenerThread.start();
 
             System.out.println("Connected to the server.");
 
@@ -39,29 +51,100 @@ public class SpotifyClient {
 
                 writer.println(message);
 
-                String reply = reader.readLine();
-                if (reply.replace(System.lineSeparator(), "").startsWith("Encoding:")) {
-                    player = new SongPlayer(reply);
-                    Thread playerThread = new Thread(player);
-                    playerThread.setDaemon(true);
-                    playerThread.start();
+                String reply = replies.take();
+                if (reply.startsWith("Encoding:")) {
                     System.out.println("[ Your song is now playing... ]");
                     continue;
                 }
                 System.out.println(reply);
-                if (reply.replace(System.lineSeparator(), "").equals("[ Song stopped successfully ]")) {
+                if (reply.equals("[ Song stopped successfully ]") && player != null) {
                     player.stop();
                 }
-                if (reply.replace(System.lineSeparator(), "").equals("[ Disconnected from server ]")) {
+                if (reply.equals(DISCONNECTED)) {
                     break;
                 }
             }
         } catch (IOException e) {
             logger.logException(e);
             throw new RuntimeException("There is a problem with the network communication.", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
     }
 
+    /**
+     * Reads the frames sent by the server: replies are handed to the console loop
+     * and audio frames are fed to the song player. A song started by a command replaces the playing one,
+     * while the next song of the queue continues on the same player if it has the same format,
+     * or else on a new player once the previous one has finished.
+     */
+    private void listen(DataInputStream in) {
+        try {
+            while (true) {
+                byte type = in.readByte();
+                byte[] payload = new byte[in.readInt()];
+                in.readFully(payload);
+
+                switch (type) {
+                    case Frames.REPLY -> replies.put(new String(payload, StandardCharsets.UTF_8));
+                    case Frames.AUDIO_HEADER -> {
+                        String header = new String(payload, StandardCharsets.UTF_8);
+                        if (player != null) {
+                            player.stop();
+                        }
+                        startPlayer(header, null);
+                        replies.put(header);
+                    }
+                    case Frames.AUDIO_NEXT -> {
+                        String header = new String(payload, StandardCharsets.UTF_8);
+                        if (player == null || !player.queueNext(header)) {
+                            startPlayer(header, playerThread);
+                        }
+                    }
+                    case Frames.AUDIO_DATA -> {
+                        if (player != null) {
+                            player.feed(payload);
+                        }
+                    }
+                    case Frames.AUDIO_END -> {
+                        if (player != null) {
+                            player.finish();
+                        }
+                    }
+                    default -> throw new IOException("Unknown frame type " + type);
+                }
+            }
+        } catch (EOFException e) {
+            replies.offer(DISCONNECTED);
+        } catch (IOException e) {
+            logger.logException(e);
+            replies.offer(DISCONNECTED);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void startPlayer(String header, Thread previous) {
+        SongPlayer next = new SongPlayer(header);
+        playerThread = new Thread(() -> {
+            try {
+                if (previous != null) {
+                    previous.join();
+                }
+                next.run();
+                if (next.failure() != null) {
+                    logger.logException(next.failure());
+                    System.out.println(PLAYBACK_FAILED);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        playerThread.setDaemon(true);
+        playerThread.start();
+        player = next;
+    }
+
     public static void main(String[] args) {
         SpotifyClient client = new SpotifyClient();
         client.startClient();
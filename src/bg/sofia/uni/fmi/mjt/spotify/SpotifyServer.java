@@ -1,123 +1,231 @@
 package bg.sofia.uni.fmi.mjt.spotify;
 
 import bg.sofia.uni.fmi.mjt.spotify.command.CommandExecutor;
+import bg.sofia.uni.fmi.mjt.spotify.connection.BlockingConnection;
+import bg.sofia.uni.fmi.mjt.spotify.connection.Reactor;
 import bg.sofia.uni.fmi.mjt.spotify.exceptions.ExceptionLogger;
+import bg.sofia.uni.fmi.mjt.spotify.metrics.ServerMetrics;
+
+import javax.management.JMException;
 
 import java.io.IOException;
+import java.lang.reflect.Method;
 import java.net.InetSocketAddress;
-import java.nio.ByteBuffer;
-import java.nio.channels.SelectionKey;
-import java.nio.channels.Selector;
+import java.nio.channels.AsynchronousCloseException;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
-import java.nio.charset.StandardCharsets;
-import java.util.Iterator;
-import java.util.Set;
-
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The server accepts connections on its own thread. In {@link ServerMode#REACTOR} mode it spreads them
+ * round-robin between the reactors, each running its own selector loop. In
+ * {@link ServerMode#THREAD_PER_CONNECTION} mode every connection is served with blocking I/O by its own
+ * thread, virtual if the runtime supports them.
+ * <p>
+ * Once {@link ServerConfig#maxConnections()} connections are open, the acceptor waits for one of them to close
+ * before accepting again, so new clients queue up in the listen backlog instead of exhausting the server.
+ * <p>
+ * The {@link ServerMetrics} of the server are registered as an MXBean while it is running.
+ */
 public class SpotifyServer {
     private static final String SERVER_HOST = "localhost";
-    private static final int BUFFER_SIZE = 1024;
+    private static final int SHUTDOWN_TIMEOUT_SECONDS = 5;
 
-    private static int SERVER_PORT;
-    private boolean isServerOpen;
+    private final ServerConfig config;
+    private volatile boolean isServerOpen;
+    private volatile ServerSocketChannel serverSocketChannel;
     private CommandExecutor cmdExec;
     private ExceptionLogger logger;
+    private final ServerMetrics metrics;
+    private final Semaphore connectionPermits;
 
     public SpotifyServer(int port) {
-        SERVER_PORT = port;
+        this(ServerConfig.defaults(port));
+    }
+
+    public SpotifyServer(ServerConfig config) {
+        this.config = config;
         isServerOpen = true;
-        cmdExec = new CommandExecutor();
+        metrics = new ServerMetrics();
+        cmdExec = new CommandExecutor(metrics);
         logger = new ExceptionLogger();
+        try {
+            metrics.registerMBean();
+        } catch (JMException e) {
+            logger.logException(e);
+        }
+        connectionPermits = new Semaphore(config.maxConnections());
+    }
+
+    public ServerMetrics metrics() {
+        return metrics;
     }
 
     public void start() {
-        try (ServerSocketChannel serverSocketChannel = ServerSocketChannel.open()) {
+        if (config.mode() == ServerMode.THREAD_PER_CONNECTION) {
+            startThreadPerConnection();
+        } else {
+            startReactors();
+        }
+    }
 
-            serverSocketChannel.bind(new InetSocketAddress(SERVER_HOST, SERVER_PORT));
-            serverSocketChannel.configureBlocking(false);
+    public void stop() {
+        isServerOpen = false;
+        connectionPermits.release();
+        try {
+            if (serverSocketChannel != null) {
+                serverSocketChannel.close();
+            }
+        } catch (IOException e) {
+            logger.logException(e);
+        }
+    }
 
-            Selector selector = Selector.open();
-            serverSocketChannel.register(selector, SelectionKey.OP_ACCEPT);
+    private void startReactors() {
+        Reactor[] reactors = new Reactor[config.reactorThreads()];
+        try (ServerSocketChannel serverSocketChannel = ServerSocketChannel.open()) {
+            for (int i = 0; i < reactors.length; i++) {
+                reactors[i] = new Reactor(cmdExec, config.commandExecutor(), config.streamingMode(),
+                        metrics, logger, config.idleTimeout(), this::connectionClosed);
+                Thread reactorThread = new Thread(reactors[i], "spotify-reactor-" + i);
+                reactorThread.start();
+            }
 
-            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            this.serverSocketChannel = serverSocketChannel;
+            serverSocketChannel.bind(new InetSocketAddress(SERVER_HOST, config.port()));
 
+            int nextReactor = 0;
             while (isServerOpen) {
-                communicateWithChannels(selector, buffer);
+                connectionPermits.acquireUninterruptibly();
+                if (!isServerOpen) {
+                    break;
+                }
+                SocketChannel accept = acceptOrRelease(serverSocketChannel);
+                metrics.connectionOpened();
+                try {
+                    accept.configureBlocking(false);
+                } catch (IOException e) {
+                    logger.logException(e);
+                    dropConnection(accept);
+                    continue;
+                }
+                reactors[nextReactor].register(accept);
+                nextReactor = (nextReactor + 1) % reactors.length;
             }
+        } catch (AsynchronousCloseException e) {
+            // The server socket was closed by stop()
         } catch (IOException e) {
             logger.logException(e);
             throw new RuntimeException("There is a problem with the server socket", e);
+        } finally {
+            for (Reactor reactor : reactors) {
+                if (reactor != null) {
+                    reactor.shutdown();
+                }
+            }
+            shutdownCommands();
         }
     }
 
-    public void stop() {
-        isServerOpen = false;
-    }
+    private void startThreadPerConnection() {
+        ExecutorService connectionThreads = newThreadPerTaskExecutor();
+        try (ServerSocketChannel serverSocketChannel = ServerSocketChannel.open()) {
+            this.serverSocketChannel = serverSocketChannel;
+            serverSocketChannel.bind(new InetSocketAddress(SERVER_HOST, config.port()));
 
-    private void manageKeys(Iterator<SelectionKey> keyIterator, ByteBuffer buffer, Selector selector) {
-        try {
-            SelectionKey key = keyIterator.next();
-            if (key.isReadable()) {
-                SocketChannel sc = (SocketChannel) key.channel();
-
-                buffer.clear();
-                int r = sc.read(buffer);
-                if (r <= 0) {
-                    sc.close();
-                    return;
+            while (isServerOpen) {
+                connectionPermits.acquireUninterruptibly();
+                if (!isServerOpen) {
+                    break;
+                }
+                SocketChannel accept = acceptOrRelease(serverSocketChannel);
+                metrics.connectionOpened();
+                BlockingConnection connection = new BlockingConnection(accept, cmdExec, connectionThreads,
+                        config.streamingMode(), metrics, logger);
+                try {
+                    connectionThreads.execute(() -> {
+                        try {
+                            connection.run();
+                        } finally {
+                            connectionClosed();
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    logger.logException(e);
+                    dropConnection(accept);
                 }
-                buffer.flip();
-                byte[] messageBytes = new byte[buffer.remaining()];
-                buffer.get(messageBytes);
-                String message = new String(messageBytes, StandardCharsets.UTF_8);
-                message = message.replace(System.lineSeparator(), "");
-
-                int scHash = sc.hashCode();
-                String reply = cmdExec.execute(scHash, message);
-
-                buffer.clear();
-                buffer.put(reply.getBytes());
-                buffer.flip();
-                sc.write(buffer);
-
-            } else if (key.isAcceptable()) {
-                ServerSocketChannel sockChannel = (ServerSocketChannel) key.channel();
-                SocketChannel accept = sockChannel.accept();
-                accept.configureBlocking(false);
-                accept.register(selector, SelectionKey.OP_READ);
             }
-
-            keyIterator.remove();
+        } catch (AsynchronousCloseException e) {
+            // The server socket was closed by stop()
         } catch (IOException e) {
             logger.logException(e);
-            throw new RuntimeException("There is a problem with the selection keys", e);
+            throw new RuntimeException("There is a problem with the server socket", e);
+        } finally {
+            connectionThreads.shutdownNow();
+            shutdownCommands();
         }
     }
 
-    private void communicateWithChannels(Selector selector, ByteBuffer buffer) {
+    private SocketChannel acceptOrRelease(ServerSocketChannel serverSocketChannel) throws IOException {
         try {
-            int readyChannels = selector.select();
-            if (readyChannels == 0) {
-                return;
-            }
+            return serverSocketChannel.accept();
+        } catch (IOException e) {
+            connectionPermits.release();
+            throw e;
+        }
+    }
 
-            Set<SelectionKey> selectedKeys = selector.selectedKeys();
-            Iterator<SelectionKey> keyIterator = selectedKeys.iterator();
+    /**
+     * Closes a connection that failed before it was handed over, so one bad client doesn't stop the server.
+     */
+    private void dropConnection(SocketChannel accept) {
+        try {
+            accept.close();
+        } catch (IOException e) {
+            logger.logException(e);
+        }
+        connectionClosed();
+    }
 
-            while (keyIterator.hasNext()) {
-                manageKeys(keyIterator, buffer, selector);
-            }
+    private void connectionClosed() {
+        metrics.connectionClosed();
+        connectionPermits.release();
+    }
 
-        } catch (IOException e) {
+    private void shutdownCommands() {
+        config.commandExecutor().shutdown();
+        try {
+            config.commandExecutor().awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        cmdExec.close();
+        try {
+            metrics.unregisterMBean();
+        } catch (JMException e) {
             logger.logException(e);
-            throw new RuntimeException("There is a problem with the channel communication", e);
+        }
+    }
+
+    /**
+     * Virtual threads are only available since JDK 21, on older runtimes every task gets a platform thread.
+     */
+    private static ExecutorService newThreadPerTaskExecutor() {
+        try {
+            Method newVirtualThreadPerTaskExecutor = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) newVirtualThreadPerTaskExecutor.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool();
         }
     }
 
     public static void main(String[] args) {
         final int PORT = 7777;
-        SpotifyServer spotify = new SpotifyServer(PORT);
+        SpotifyServer spotify = new SpotifyServer(ServerConfig.fromSystemProperties(PORT));
         spotify.start();
     }
 }
-
@@ -0,0 +1,16 @@
+package bg.sofia.uni.fmi.mjt.spotify.command;
+
+import bg.sofia.uni.fmi.mjt.spotify.session.Session;
+
+/**
+ * This interface is responsible for handling a single client command, registered by its verb
+ * in a {@link CommandRegistry}.
+ */
+@FunctionalInterface
+public interface Command {
+    /**
+     * @param message the whole command line, including the verb
+     * @return the reply to the client
+     */
+    String execute(Session session, String message);
+}
@@ -1,29 +1,49 @@
 package bg.sofia.uni.fmi.mjt.spotify.command;
 
 import bg.sofia.uni.fmi.mjt.spotify.exceptions.ExceptionLogger;
+import bg.sofia.uni.fmi.mjt.spotify.jfr.PersistenceEvent;
+import bg.sofia.uni.fmi.mjt.spotify.metrics.LatencyHistogram;
+import bg.sofia.uni.fmi.mjt.spotify.metrics.LatencySummary;
+import bg.sofia.uni.fmi.mjt.spotify.metrics.ServerMetrics;
+import bg.sofia.uni.fmi.mjt.spotify.search.SongSearchIndex;
+import bg.sofia.uni.fmi.mjt.spotify.security.Authenticator;
+import bg.sofia.uni.fmi.mjt.spotify.security.PasswordHasher;
+import bg.sofia.uni.fmi.mjt.spotify.security.VerifiedCredentials;
+import bg.sofia.uni.fmi.mjt.spotify.session.Session;
+import bg.sofia.uni.fmi.mjt.spotify.session.SessionRegistry;
+import bg.sofia.uni.fmi.mjt.spotify.stats.PlayStatistics;
+import bg.sofia.uni.fmi.mjt.spotify.stats.StatisticsWindow;
+import bg.sofia.uni.fmi.mjt.spotify.stats.TopSongsTracker;
+import bg.sofia.uni.fmi.mjt.spotify.storage.PlaylistRepository;
+import bg.sofia.uni.fmi.mjt.spotify.storage.SongMetadataIndex;
+import bg.sofia.uni.fmi.mjt.spotify.storage.StateSnapshot;
+import bg.sofia.uni.fmi.mjt.spotify.storage.UserRepository;
 import bg.sofia.uni.fmi.mjt.spotify.storage.UserStorage;
+import bg.sofia.uni.fmi.mjt.spotify.storage.WriteAheadLog;
+import bg.sofia.uni.fmi.mjt.spotify.streaming.SongCache;
 
-import javax.sound.sampled.AudioFormat;
-import javax.sound.sampled.AudioSystem;
-import javax.sound.sampled.UnsupportedAudioFileException;
-
-import java.io.File;
 import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
-import java.io.PrintWriter;
-import java.io.FileWriter;
-import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 
+import java.util.Arrays;
 import java.util.Map;
 import java.util.Set;
 import java.util.List;
-import java.util.Arrays;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.HashMap;
-import java.util.Collections;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 /**
@@ -31,96 +51,336 @@ import java.util.stream.Collectors;
  * The songs used should be in .wav format and named [artist]-[song] in all lower case.
  * They should also be added manually in the "songs.txt" file( [artist]--[song] in all lower case ).
  * Once created accounts and playlists could only be deleted manually from the respective file.
+ * <p>
+ * The executor is thread-safe: commands from different connections may be executed in parallel.
+ * Every connection has a {@link Session} identified by a long id, which holds its login and song
+ * and can be resumed after a reconnect with the token returned by "session-token". A resumed session
+ * keeps its play queue, but the song interrupted by the reconnect plays again from the beginning.
+ * Users and playlists are kept by thread-safe repositories whose changes are group-committed
+ * to a {@link WriteAheadLog}, which is replayed on startup to recover from a crash.
+ * The whole state is also written periodically to a binary {@link StateSnapshot}, which is loaded on startup
+ * instead of parsing the text files that haven't changed since.
+ * Passwords are stored hashed. Hashing is expensive by design, so {@link #executeAsync} runs "register"
+ * and "login" on a bounded pool of their own, which answers with "Server is busy" once its queue is full.
+ * Commands are dispatched by their verb through a {@link CommandRegistry}. Their latencies, together with
+ * the cache hit rates and persistence latencies, are recorded in the {@link ServerMetrics}, which the users
+ * listed in the "spotify.admins" property can see with the "stats" command.
+ * <p>
+ * Every session has a play queue, filled by "play-playlist" and "enqueue". When the song of a session has been
+ * streamed to the end, the streaming code calls {@link #advanceQueue} to start the next one, and "skip" stops
+ * the current song in favour of the next one.
  */
-public class CommandExecutor {
+public class CommandExecutor implements AutoCloseable {
     private static final String USERS_FILE = "users.txt";
     private static final String SONGS_FILE = "songs.txt";
     private static final String PLAYLISTS_FILE = "playlists.txt";
+    private static final String WAL_FILE = "spotify.wal";
+    private static final WriteAheadLog.Durability WAL_DURABILITY =
+            WriteAheadLog.Durability.valueOf(System.getProperty("spotify.wal.durability", "FSYNC"));
+    private static final long GROUP_COMMIT_MILLIS = Long.getLong("spotify.wal.group.commit.millis", 2);
+    private static final String SONGS_INDEX_FILE = "songs.idx";
+    private static final String SNAPSHOT_FILE = "spotify.snapshot";
+    private static final long SNAPSHOT_INTERVAL_SECONDS = Long.getLong("spotify.snapshot.interval.seconds", 60);
+    private static final int SEARCH_RESULT_LIMIT = 100;
+    private static final long SESSION_RESUME_SECONDS = Long.getLong("spotify.session.resume.seconds", 300);
+    private static final long SESSION_EXPIRY_INTERVAL_SECONDS = 60;
+    private static final int TOP_SONGS_CAPACITY = Integer.getInteger("spotify.top.capacity", Integer.MAX_VALUE);
+    private static final int PASSWORD_ITERATIONS = Integer.getInteger("spotify.password.iterations", 100_000);
+    private static final int HASHING_THREADS =
+            Integer.getInteger("spotify.hashing.threads", Runtime.getRuntime().availableProcessors());
+    private static final int HASHING_QUEUE_CAPACITY = Integer.getInteger("spotify.hashing.queue", 1024);
+    private static final int VERIFIED_LOGINS_CAPACITY = 10_000;
+    private static final long VERIFIED_LOGINS_TTL_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    private static final long SONG_CACHE_BYTES = Long.getLong("spotify.cache.bytes", 256L * 1024 * 1024);
+    private static final Set<String> HASHING_COMMANDS = Set.of("register", "login");
+    private static final Set<String> ADMINS = parseAdmins(System.getProperty("spotify.admins", ""));
 
     private UserStorage users;
     private Map<String, Set<String>> songs;
-    private Map<Integer, String> nowPlaying;
-    private Map<String, Integer> playingCount;
+    private SongSearchIndex searchIndex;
+    private PlayStatistics playStatistics;
+    private SongCache songCache;
+    private SongMetadataIndex songMetadata;
     private ExceptionLogger logger;
+    private WriteAheadLog wal;
+    private PlaylistRepository playlists;
+    private ScheduledExecutorService maintenance;
+    private Authenticator authenticator;
+    private ThreadPoolExecutor hashingPool;
+    private CommandRegistry commands;
+    private ServerMetrics metrics;
+    private LatencyHistogram snapshotLatency;
 
     public CommandExecutor() {
+        this(new ServerMetrics());
+    }
+
+    public CommandExecutor(ServerMetrics metrics) {
+        this.metrics = metrics;
         logger = new ExceptionLogger();
-        nowPlaying = new HashMap<>();
-        playingCount = new HashMap<>();
-        Map<String, String> registeredUsers = new HashMap<>();
-        Map<Integer, String> loggedUsers = new HashMap<>();
-
-        Path usersFilePath = Path.of(USERS_FILE);
-        if (Files.exists(usersFilePath)) {
-            try (BufferedReader br = Files.newBufferedReader(usersFilePath)) {
+        songCache = new SongCache(SONG_CACHE_BYTES, song -> (int) playStatistics.playing(song));
+        StateSnapshot snapshot;
+        try {
+            snapshot = StateSnapshot.read(Path.of(SNAPSHOT_FILE));
+            this.songs = snapshot.catalog(Path.of(SONGS_FILE));
+        } catch (IOException e) {
+            logger.logException(e);
+            throw new RuntimeException("There is a problem with the snapshot file", e);
+        }
+
+        if (songs == null) {
+            songs = new HashMap<>();
+            try (BufferedReader br = new BufferedReader(new FileReader(SONGS_FILE))) {
                 String line;
                 while ((line = br.readLine()) != null) {
-                    int whitespaceIndex = line.indexOf(" ");
-                    String email = line.substring(0, whitespaceIndex);
-                    String password = line.substring(whitespaceIndex + 1);
-                    registeredUsers.put(email, password);
+                    int doubleDashIndex = line.indexOf("--");
+                    String artist = line.substring(0, doubleDashIndex);
+                    String songName = line.substring(doubleDashIndex + 2);
+
+                    if (!songs.containsKey(artist)) {
+                        Set<String> repertoire = new HashSet<>();
+                        repertoire.add(songName);
+                        songs.put(artist, repertoire);
+                    } else {
+                        songs.get(artist).add(songName);
+                    }
                 }
             } catch (IOException e) {
                 logger.logException(e);
-                throw new RuntimeException("There is a problem with the users file", e);
+                throw new RuntimeException("There is a problem with the songs file", e);
             }
         }
-        this.users = new UserStorage(registeredUsers, loggedUsers);
-
-        this.songs = new HashMap<>();
-        try (BufferedReader br = new BufferedReader(new FileReader(SONGS_FILE))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                int doubleDashIndex = line.indexOf("--");
-                String artist = line.substring(0, doubleDashIndex);
-                String songName = line.substring(doubleDashIndex + 2);
-
-                if (!songs.containsKey(artist)) {
-                    Set<String> repertoire = new HashSet<>();
-                    repertoire.add(songName);
-                    songs.put(artist, repertoire);
-                } else {
-                    songs.get(artist).add(songName);
-                }
+
+        this.searchIndex = new SongSearchIndex();
+        for (Map.Entry<String, Set<String>> artist : songs.entrySet()) {
+            for (String songName : artist.getValue()) {
+                searchIndex.add(artist.getKey(), songName);
             }
+        }
+
+        playStatistics = new PlayStatistics(new TopSongsTracker(TOP_SONGS_CAPACITY), snapshot.playStatistics());
+
+        List<String> catalog = songs.entrySet().stream()
+                .flatMap(e -> e.getValue().stream().map(songName -> e.getKey() + "-" + songName))
+                .collect(Collectors.toList());
+        try {
+            songMetadata = SongMetadataIndex.load(Path.of(SONGS_INDEX_FILE), catalog, logger);
         } catch (IOException e) {
             logger.logException(e);
-            throw new RuntimeException("There is a problem with the songs file", e);
+            throw new RuntimeException("There is a problem with the songs index file", e);
+        }
+
+        try {
+            wal = new WriteAheadLog(Path.of(WAL_FILE), WAL_DURABILITY, GROUP_COMMIT_MILLIS, logger);
+            UserRepository registeredUsers = new UserRepository(Path.of(USERS_FILE), wal, snapshot);
+            playlists = new PlaylistRepository(Path.of(PLAYLISTS_FILE), wal, snapshot);
+            wal.recover(registeredUsers, playlists);
+            this.users = new UserStorage(registeredUsers, new SessionRegistry());
+            VerifiedCredentials verifiedLogins =
+                    new VerifiedCredentials(VERIFIED_LOGINS_CAPACITY, VERIFIED_LOGINS_TTL_MILLIS);
+            this.authenticator = new Authenticator(registeredUsers, new PasswordHasher(PASSWORD_ITERATIONS),
+                    verifiedLogins);
+            metrics.registerCache("verified logins", verifiedLogins::hits, verifiedLogins::misses);
+        } catch (IOException e) {
+            logger.logException(e);
+            throw new RuntimeException("There is a problem with the users and playlists files", e);
+        }
+
+        snapshotLatency = new LatencyHistogram();
+        metrics.registerCache("song cache", songCache::hits, songCache::misses);
+        metrics.registerPersistenceLatency("wal flush", wal.flushLatency());
+        metrics.registerPersistenceLatency("wal checkpoint", wal.checkpointLatency());
+        metrics.registerPersistenceLatency("snapshot write", snapshotLatency);
+
+        maintenance = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "spotify-maintenance");
+            thread.setDaemon(true);
+            return thread;
+        });
+        maintenance.scheduleWithFixedDelay(() -> {
+            try {
+                writeSnapshot();
+            } catch (IOException e) {
+                logger.logException(e);
+            }
+        }, SNAPSHOT_INTERVAL_SECONDS, SNAPSHOT_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        maintenance.scheduleWithFixedDelay(
+                () -> users.sessions().expireDetached(TimeUnit.SECONDS.toMillis(SESSION_RESUME_SECONDS)),
+                SESSION_EXPIRY_INTERVAL_SECONDS, SESSION_EXPIRY_INTERVAL_SECONDS, TimeUnit.SECONDS);
+
+        AtomicInteger hashingThreads = new AtomicInteger();
+        hashingPool = new ThreadPoolExecutor(HASHING_THREADS, HASHING_THREADS, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(HASHING_QUEUE_CAPACITY), task -> {
+                    Thread thread = new Thread(task, "spotify-hashing-" + hashingThreads.getAndIncrement());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+
+        commands = new CommandRegistry(metrics);
+        commands.register("register", true, this::register);
+        commands.register("login", true, this::login);
+        commands.register("search", true, this::searchSongs);
+        commands.register("top", true, this::topSongs);
+        commands.register("create-playlist", true, this::createPlaylist);
+        commands.register("add-song-to", true, this::addSong);
+        commands.register("show-playlist", true, this::showPlaylist);
+        commands.registerPlayback("play", true, this::play);
+        commands.registerPlayback("play-playlist", true, this::playPlaylist);
+        commands.registerPlayback("enqueue", true, this::enqueue);
+        commands.registerPlayback("skip", false, (session, message) -> skip(session));
+        commands.registerPlayback("stop", false, (session, message) -> stop(session));
+        commands.register("logout", false, (session, message) -> logout(session));
+        commands.register("disconnect", false, (session, message) -> disconnect(session));
+        commands.register("session-token", false, (session, message) -> sessionToken(session));
+        commands.registerPlayback("resume", true, this::resume);
+        commands.register("stats", false, (session, message) -> stats(session));
+    }
+
+    /**
+     * Executes the command on the given executor, except for "register" and "login",
+     * which are executed on the password hashing pool.
+     */
+    public CompletableFuture<CommandReply> executeAsync(long sessionId, String message, Executor commandExecutor) {
+        boolean hashing = HASHING_COMMANDS.contains(CommandRegistry.verb(message));
+        try {
+            return CompletableFuture.supplyAsync(() -> executeCommand(sessionId, message),
+                    hashing ? hashingPool : commandExecutor);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.completedFuture(
+                    CommandReply.of("[ Server is busy, try again later ]" + System.lineSeparator()));
         }
     }
 
-    public String execute(Integer scHash, String message) {
-        String reply;
-        if (message.startsWith("register")) {
-            reply = register(scHash, message);
-        } else if (message.startsWith("login")) {
-            reply = login(scHash, message);
-        } else if (message.startsWith("search")) {
-            reply = searchSongs(scHash, message);
-        } else if (message.startsWith("top")) {
-            reply = topSongs(scHash, message);
-        } else if (message.startsWith("create-playlist")) {
-            reply = createPlaylist(scHash, message);
-        } else if (message.startsWith("add-song-to")) {
-            reply = addSong(scHash, message);
-        } else if (message.startsWith("show-playlist")) {
-            reply = showPlaylist(scHash, message);
-        } else if (message.startsWith("play")) {
-            reply = play(scHash, message);
-        } else if (message.equals("stop")) {
-            reply = stop(scHash);
-        } else if (message.equals("logout")) {
-            reply = logout(scHash);
-        } else if (message.equals("disconnect")) {
-            reply = disconnect(scHash);
-        } else {
-            reply = "[ Unknown command ]";
+    /**
+     * @return the text of the reply to the command
+     */
+    public String execute(long sessionId, String message) {
+        return executeCommand(sessionId, message).text();
+    }
+
+    /**
+     * @return the reply to the command and whether it started or stopped the song of the session
+     */
+    public CommandReply executeCommand(long sessionId, String message) {
+        Session session = users.sessions().attach(sessionId);
+        CommandReply reply = commands.dispatch(session, message);
+        return reply.withText(reply.text() + System.lineSeparator());
+    }
+
+    /**
+     * Flushes the write-ahead log, checkpoints it into the users and playlists files
+     * and writes a final snapshot.
+     */
+    @Override
+    public void close() {
+        hashingPool.shutdown();
+        maintenance.shutdown();
+        try {
+            maintenance.awaitTermination(SNAPSHOT_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
 
-        return reply + System.lineSeparator();
+        try {
+            wal.close();
+            writeSnapshot();
+        } catch (IOException e) {
+            logger.logException(e);
+            throw new IllegalStateException("A problem occurred while writing to the users and playlists files", e);
+        }
+    }
+
+    /**
+     * Writes the whole state to the snapshot file.
+     */
+    public void writeSnapshot() throws IOException {
+        PersistenceEvent event = new PersistenceEvent("snapshot write", SNAPSHOT_FILE);
+        event.begin();
+        long start = System.nanoTime();
+        new StateSnapshot()
+                .withUsers(Path.of(USERS_FILE), users.registeredUsers()::snapshot)
+                .withCatalog(Path.of(SONGS_FILE), () -> songs)
+                .withPlaylists(Path.of(PLAYLISTS_FILE), playlists::snapshot)
+                .withPlayStatistics(playStatistics.totals())
+                .write(Path.of(SNAPSHOT_FILE));
+        snapshotLatency.record(System.nanoTime() - start);
+        event.bytes(Files.size(Path.of(SNAPSHOT_FILE)));
+        event.commit();
     }
 
-    private String register(Integer scHash, String message) {
+    /**
+     * Opens a session for a new connection.
+     *
+     * @return the id of the session
+     */
+    public long openSession() {
+        return users.sessions().open();
+    }
+
+    /**
+     * Closes the session of a closed connection. Its song is stopped, but the session can still be resumed
+     * if it was given a token.
+     */
+    public void closeSession(long sessionId) {
+        Session session = users.sessions().detach(sessionId);
+        if (session == null) {
+            return;
+        }
+
+        String song = session.interruptPlaying();
+        if (song != null) {
+            playStatistics.stopped(song);
+        }
+    }
+
+    /**
+     * @return the song the session plays or null if it plays nothing or has been closed
+     */
+    public String getNowPlaying(long sessionId) {
+        Session session = users.sessions().get(sessionId);
+        return session == null ? null : session.nowPlaying();
+    }
+
+    /**
+     * @return the song queued after the one the session plays or null if the queue is empty
+     * or the session has been closed
+     */
+    public String getNextQueued(long sessionId) {
+        Session session = users.sessions().get(sessionId);
+        return session == null ? null : session.nextQueued();
+    }
+
+    /**
+     * Moves a session whose song has been streamed to the end on to the next song of its queue.
+     *
+     * @return the reply announcing the next song or null if the finished song had already been stopped,
+     * the queue is empty or the session has been closed
+     */
+    public CommandReply advanceQueue(long sessionId, String finishedSong) {
+        Session session = users.sessions().get(sessionId);
+        if (session == null || !session.finishPlaying(finishedSong)) {
+            return null;
+        }
+        playStatistics.stopped(finishedSong);
+        return playNextQueued(session);
+    }
+
+    public SongCache getSongCache() {
+        return songCache;
+    }
+
+    public ServerMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return command verb -> latency summary of the command
+     */
+    public Map<String, LatencySummary> getCommandStatistics() {
+        return commands.statistics();
+    }
+
+    private String register(Session session, String message) {
         if (invalidThreePartCommandFormat(message)) {
             return "[ Unknown command ]";
         }
@@ -134,26 +394,25 @@ public class CommandExecutor {
         }
 
         String reply;
-        if (users.registeredUsers().containsKey(email)) {
+        boolean registered;
+        try {
+            registered = authenticator.register(email, password);
+        } catch (IOException e) {
+            logger.logException(e);
+            throw new IllegalStateException("A problem occurred while writing to the users file", e);
+        }
+
+        if (!registered) {
             reply = "[ Email " + email + " is already taken, select another one ]";
         } else {
-            try (FileWriter fileWriter = new FileWriter(USERS_FILE, true);
-                    PrintWriter writer = new PrintWriter(fileWriter, true)) {
-                writer.println(email + " " + password);
-            } catch (IOException e) {
-                logger.logException(e);
-                throw new IllegalStateException("A problem occurred while writing to the users file", e);
-            }
-
-            users.registeredUsers().put(email, password);
-            users.loggedUsers().put(scHash, email);
+            session.user(email);
             reply = "[ User with email " + email + " successfully registered ]";
         }
 
         return reply;
     }
 
-    private String login(Integer scHash, String message) {
+    private String login(Session session, String message) {
         if (invalidThreePartCommandFormat(message)) {
             return "[ Unknown command ]";
         }
@@ -162,10 +421,18 @@ public class CommandExecutor {
         String email = cmd.email();
         String password = cmd.password();
 
+        boolean verified;
+        try {
+            verified = authenticator.login(email, password);
+        } catch (IOException e) {
+            logger.logException(e);
+            throw new IllegalStateException("A problem occurred while writing to the users file", e);
+        }
+
         String reply;
-        if (users.registeredUsers().containsKey(email) && password.equals(users.registeredUsers().get(email))) {
+        if (verified) {
             reply = "[ User with email " + email + " successfully logged in ]";
-            users.loggedUsers().put(scHash, email);
+            session.user(email);
         } else {
             reply = "[ Invalid email/password combination ]";
         }
@@ -173,92 +440,71 @@ public class CommandExecutor {
         return reply;
     }
 
-    private String searchSongs(Integer scHash, String message) {
-        String check = validateTwoPartCommand(scHash, message);
+    private String searchSongs(Session session, String message) {
+        String check = validateTwoPartCommand(session, message);
         if (!check.equals("")) {
             return check;
         }
 
-        Set<String> searchWords = new HashSet<>();
+        Set<String> searchWords = new LinkedHashSet<>();
         String searchInput = message.substring(message.indexOf(" ") + 1).toLowerCase().strip();
-        while (searchInput.contains(" ")) {
-            int whitespaceIndex = searchInput.indexOf(" ");
-            searchWords.add(searchInput.substring(0, whitespaceIndex));
-            searchInput = searchInput.substring(whitespaceIndex + 1);
-        }
-        searchWords.add(searchInput);
-
-        Set<String> searchResult = new HashSet<>();
-        String result;
-        for (String word : searchWords) {
-            for (String artist : songs.keySet()) {
-                if (artist.contains(word)) {
-                    for (String songName : songs.get(artist)) {
-                        result = artist + "-" + songName;
-                        searchResult.add(result);
-                    }
-                } else {
-                    for (String songName : songs.get(artist)) {
-                        if (songName.contains(word)) {
-                            result = artist + "-" + songName;
-                            searchResult.add(result);
-                        }
-                    }
-                }
+        for (String word : searchInput.split(" ")) {
+            if (!word.isEmpty()) {
+                searchWords.add(word);
             }
         }
 
+        List<String> searchResult = searchIndex.search(List.copyOf(searchWords), SEARCH_RESULT_LIMIT);
         return searchResult.isEmpty() ? "[ No results found ]" : "[ " + searchResult + " ]";
     }
 
-    private String topSongs(Integer scHash, String message) {
-        String check = validateTwoPartCommand(scHash, message);
+    private String topSongs(Session session, String message) {
+        String check = validateTwoPartCommand(session, message);
         if (!check.equals("")) {
             return check;
         }
 
-        if (playingCount.isEmpty()) {
-            return "[ No songs currently playing ]";
+        String[] arguments = message.substring(message.indexOf(" ") + 1).split(" ");
+        if (arguments.length > 2) {
+            return "[ Unknown command ]";
         }
 
-        int n = Integer.parseInt(message.substring(message.indexOf(" ") + 1));
-
-        List<String> sortedSongs =
-                playingCount.entrySet().stream()
-                        .sorted(Collections.reverseOrder(Map.Entry.comparingByValue()))
-                        .limit(n)
-                        .map(Map.Entry::getKey)
-                        .collect(Collectors.toUnmodifiableList());
+        int n;
+        StatisticsWindow window;
+        try {
+            n = Integer.parseInt(arguments[0]);
+            window = arguments.length == 1
+                    ? StatisticsWindow.NOW
+                    : StatisticsWindow.valueOf(arguments[1].toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return "[ Unknown command ]";
+        }
+        if (n < 0) {
+            return "[ Unknown command ]";
+        }
 
-        return "[ " + sortedSongs + " ]";
+        List<String> topSongs = playStatistics.top(n, window);
+        if (topSongs.isEmpty()) {
+            return window == StatisticsWindow.NOW ? "[ No songs currently playing ]" : "[ No songs played ]";
+        }
+        return "[ " + topSongs + " ]";
     }
 
-    private String createPlaylist(Integer scHash, String message) {
-        String check = validateTwoPartCommand(scHash, message);
+    private String createPlaylist(Session session, String message) {
+        String check = validateTwoPartCommand(session, message);
         if (!check.equals("")) {
             return check;
         }
 
         String playlistName = message.substring(message.indexOf(" ") + 1);
-
-        Path playlistsFilePath = Path.of(PLAYLISTS_FILE);
-        if (Files.exists(playlistsFilePath)) {
-            try (BufferedReader br = Files.newBufferedReader(playlistsFilePath)) {
-                String line;
-                while ((line = br.readLine()) != null) {
-                    if (line.startsWith(playlistName)) {
-                        return "[ Playlist name " + playlistName + " is already taken, select another one ]";
-                    }
-                }
-            } catch (IOException e) {
-                logger.logException(e);
-                throw new RuntimeException("There is a problem with the playlists file", e);
-            }
+        if (!PlaylistRepository.isValidName(playlistName)) {
+            return "[ Playlist name cannot be empty or contain a tab or \"::\" ]";
         }
 
-        try (FileWriter fileWriter = new FileWriter(PLAYLISTS_FILE, true);
-                PrintWriter writer = new PrintWriter(fileWriter, true)) {
-            writer.println(playlistName);
+        try {
+            if (!playlists.create(playlistName)) {
+                return "[ Playlist name " + playlistName + " is already taken, select another one ]";
+            }
         } catch (IOException e) {
             logger.logException(e);
             throw new IllegalStateException("A problem occurred while writing to a file", e);
@@ -267,11 +513,11 @@ public class CommandExecutor {
         return "[ Playlist " + playlistName + " successfully created ]";
     }
 
-    private String addSong(Integer scHash, String message) {
+    private String addSong(Session session, String message) {
         if (invalidThreePartCommandFormat(message)) {
             return "[ Unknown command ]";
         }
-        if (notLoggedIn(scHash)) {
+        if (notLoggedIn(session)) {
             return "[ You are not logged in ]";
         }
 
@@ -285,132 +531,219 @@ public class CommandExecutor {
             return "[ There is no such song ]";
         }
 
-        String playlist = getPlaylist(playlistName);
-        if (playlist.equals("wrong name")) {
-            return "[ Playlist with name " + playlistName + " doesn't exist ]";
-        }
-
-        if (playlist.contains(songToAdd)) {
-            return "[ Song " + songToAdd + " is already in playlist " + playlistName + " ]";
-        }
-
-        String updatedPlaylist
-                = playlist.contains("::") ? playlist + songToAdd + ";" : playlist + "::" + songToAdd + ";";
-
-        int playlistLineIndex = 0;
-        try (BufferedReader br = new BufferedReader(new FileReader(PLAYLISTS_FILE))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                if (line.startsWith(playlistName)) {
-                    break;
-                }
-                playlistLineIndex++;
-            }
-        } catch (IOException e) {
-            logger.logException(e);
-            throw new RuntimeException("There is a problem with the playlists file", e);
-        }
-
-        Path playlistFilePath = Path.of(PLAYLISTS_FILE);
+        PlaylistRepository.AddResult result;
         try {
-            List<String> lines = Files.readAllLines(playlistFilePath, StandardCharsets.UTF_8);
-            lines.set(playlistLineIndex, updatedPlaylist);
-            Files.write(playlistFilePath, lines, StandardCharsets.UTF_8);
+            result = playlists.add(playlistName, songToAdd);
         } catch (IOException e) {
             logger.logException(e);
             throw new IllegalStateException("A problem occurred while writing to a file", e);
         }
 
+        if (result == PlaylistRepository.AddResult.NO_SUCH_PLAYLIST) {
+            return "[ Playlist with name " + playlistName + " doesn't exist ]";
+        } else if (result == PlaylistRepository.AddResult.ALREADY_ADDED) {
+            return "[ Song " + songToAdd + " is already in playlist " + playlistName + " ]";
+        }
+
         return "[ Song " + songToAdd + " successfully added to playlist " + playlistName + " ]";
     }
 
-    private String showPlaylist(Integer scHash, String message) {
-        String check = validateTwoPartCommand(scHash, message);
+    private String showPlaylist(Session session, String message) {
+        String check = validateTwoPartCommand(session, message);
         if (!check.equals("")) {
             return check;
         }
 
         String playlistName = message.substring(message.indexOf(" ") + 1);
-        String playlist = getPlaylist(playlistName);
-        if (playlist.equals("wrong name")) {
+        List<String> playlist = playlists.songs(playlistName);
+        if (playlist == null) {
             return "[ There isn't a playlist with name " + playlistName + " ]";
-        } else if (!playlist.contains("::")) {
+        } else if (playlist.isEmpty()) {
             return "[ Playlist " + playlistName + " is empty ]";
         } else {
-            return "[ " + playlistName + ": "
-                    + Arrays.toString(playlist.substring(playlist.indexOf("::") + 2).split(";")) + " ]";
+            return "[ " + playlistName + ": " + playlist + " ]";
         }
     }
 
-    private String play(Integer scHash, String message) {
-        String check = validateTwoPartCommand(scHash, message);
+    private CommandReply play(Session session, String message) {
+        String check = validateTwoPartCommand(session, message);
         if (!check.equals("")) {
-            return check;
-        }
-
-        if (nowPlaying.containsKey(scHash)) {
-            return "[ Another song is currently playing ]";
+            return CommandReply.of(check);
         }
 
         String song = message.substring(message.indexOf(" ") + 1).toLowerCase();
+        if (session.nowPlaying() != null) {
+            return CommandReply.of("[ Another song is currently playing ]");
+        }
         if (unavailableSong(song)) {
-            return "[ There is no such song ]";
+            return CommandReply.of("[ There is no such song ]");
         }
 
-        String reply;
-        try {
-            AudioFormat audioFormat = AudioSystem.getAudioInputStream(new File(song + ".wav")).getFormat();
-            reply = "Encoding:" + audioFormat.getEncoding() + " "
-                    + "SampleRate:" + audioFormat.getSampleRate() + " "
-                    + "SampleSizeInBits:" + audioFormat.getSampleSizeInBits() + " "
-                    + "Channels:" + audioFormat.getChannels() + " "
-                    + "FrameSize:" + audioFormat.getFrameSize() + " "
-                    + "FrameRate:" + audioFormat.getFrameRate() + " "
-                    + "BigEndian:" + audioFormat.isBigEndian() + " " + song;
-        } catch (IOException | UnsupportedAudioFileException e) {
+        String reply = songMetadata.playReply(song);
+        if (reply == null) {
+            IllegalStateException e = new IllegalStateException("Missing audio file for song " + song);
             logger.logException(e);
             throw new RuntimeException("There is a problem with getting audio format", e);
         }
 
-        nowPlaying.put(scHash, song);
-        if (playingCount.containsKey(song)) {
-            playingCount.put(song, playingCount.get(song) + 1);
-        } else {
-            playingCount.put(song, 1);
+        if (!session.startPlaying(song)) {
+            return CommandReply.of("[ Another song is currently playing ]");
         }
-        return reply;
+        playStatistics.started(song);
+        return CommandReply.started(reply, song);
     }
 
-    private String stop(Integer scHash) {
-        if (notLoggedIn(scHash)) {
-            return "[ You are not logged in ]";
+    private CommandReply playPlaylist(Session session, String message) {
+        String check = validateTwoPartCommand(session, message);
+        if (!check.equals("")) {
+            return CommandReply.of(check);
+        }
+
+        String playlistName = message.substring(message.indexOf(" ") + 1);
+        List<String> playlist = playlists.songs(playlistName);
+        if (playlist == null) {
+            return CommandReply.of("[ There isn't a playlist with name " + playlistName + " ]");
+        } else if (playlist.isEmpty()) {
+            return CommandReply.of("[ Playlist " + playlistName + " is empty ]");
+        }
+        if (session.nowPlaying() != null) {
+            return CommandReply.of("[ Another song is currently playing ]");
+        }
+
+        session.clearQueue();
+        session.enqueue(playlist);
+        CommandReply reply = playNextQueued(session);
+        return reply != null ? reply : CommandReply.of("[ Another song is currently playing ]");
+    }
+
+    private CommandReply enqueue(Session session, String message) {
+        String check = validateTwoPartCommand(session, message);
+        if (!check.equals("")) {
+            return CommandReply.of(check);
+        }
+
+        String song = message.substring(message.indexOf(" ") + 1).toLowerCase();
+        if (unavailableSong(song)) {
+            return CommandReply.of("[ There is no such song ]");
+        }
+
+        session.enqueue(List.of(song));
+        CommandReply reply = playNextQueued(session);
+        return reply != null ? reply : CommandReply.of("[ Song " + song + " added to the queue ]");
+    }
+
+    private CommandReply skip(Session session) {
+        if (notLoggedIn(session)) {
+            return CommandReply.of("[ You are not logged in ]");
+        }
+
+        String song = session.stopPlaying();
+        if (song == null) {
+            return CommandReply.of("[ No song is currently playing ]");
+        }
+        playStatistics.stopped(song);
+        CommandReply reply = playNextQueued(session);
+        return reply != null ? reply : CommandReply.stopped("[ Song stopped successfully ]");
+    }
+
+    /**
+     * Starts the next song of the queue. Songs without an audio file are logged and left out.
+     *
+     * @return the reply announcing the started song or null if none was started
+     */
+    private CommandReply playNextQueued(Session session) {
+        String song;
+        while ((song = session.playNextQueued()) != null) {
+            String reply = songMetadata.playReply(song);
+            if (reply != null) {
+                playStatistics.started(song);
+                return CommandReply.started(reply, song);
+            }
+            session.finishPlaying(song);
+            logger.logException(new IllegalStateException("Missing audio file for song " + song));
+        }
+        return null;
+    }
+
+    private CommandReply stop(Session session) {
+        if (notLoggedIn(session)) {
+            return CommandReply.of("[ You are not logged in ]");
         } else {
-            String song = nowPlaying.get(scHash);
-            nowPlaying.remove(scHash);
-            if (playingCount.get(song) == 1) {
-                playingCount.remove(song);
-            } else {
-                playingCount.put(song, playingCount.get(song) - 1);
+            session.clearQueue();
+            String song = session.stopPlaying();
+            if (song != null) {
+                playStatistics.stopped(song);
             }
-            return "[ Song stopped successfully ]";
+            return CommandReply.stopped("[ Song stopped successfully ]");
         }
     }
 
-    private String logout(Integer scHash) {
-        if (notLoggedIn(scHash)) {
+    private String logout(Session session) {
+        if (notLoggedIn(session)) {
             return "[ You are not logged in ]";
         } else {
-            users.loggedUsers().remove(scHash);
+            session.user(null);
+            users.sessions().revokeToken(session);
             return "[ Successfully logged out ]";
         }
     }
 
-    private String disconnect(Integer scHash) {
-        users.loggedUsers().remove(scHash);
+    private String disconnect(Session session) {
+        session.user(null);
+        users.sessions().revokeToken(session);
 
         return "[ Disconnected from server ]";
     }
 
+    private String sessionToken(Session session) {
+        if (notLoggedIn(session)) {
+            return "[ You are not logged in ]";
+        }
+
+        return "[ Session token: " + users.sessions().issueToken(session) + " ]";
+    }
+
+    private CommandReply resume(Session session, String message) {
+        if (!message.contains(" ")) {
+            return CommandReply.of("[ Unknown command ]");
+        }
+        if (!notLoggedIn(session)) {
+            return CommandReply.of("[ You are already logged in ]");
+        }
+
+        Session resumed = users.sessions().resume(message.substring(message.indexOf(" ") + 1).strip());
+        if (resumed == null) {
+            return CommandReply.of("[ Invalid session token ]");
+        }
+
+        session.user(resumed.user());
+        session.takeOver(resumed);
+        CommandReply reply = playNextQueued(session);
+        return reply != null ? reply : CommandReply.of("[ Session of " + resumed.user() + " resumed ]");
+    }
+
+    private String stats(Session session) {
+        if (notLoggedIn(session)) {
+            return "[ You are not logged in ]";
+        }
+        if (!ADMINS.contains(session.user())) {
+            return "[ Only administrators can see the server statistics ]";
+        }
+
+        return "[ " + metrics.getReport() + " ]";
+    }
+
+    /**
+     * Parses the comma-separated e-mails of the administrators, ignoring the spaces around them,
+     * empty entries and duplicates.
+     */
+    static Set<String> parseAdmins(String admins) {
+        return Arrays.stream(admins.split(","))
+                .map(String::strip)
+                .filter(admin -> !admin.isEmpty())
+                .collect(Collectors.toUnmodifiableSet());
+    }
+
     private boolean invalidEmail(String email) {
         String regex = "^[\\w!#$%&'*+/=?`{|}~^-]+(?:\\.[\\w!#$%&'*+/=?`{|}~^-]+)*@(?:[a-zA-Z0-9-]+\\.)+[a-zA-Z]{2,6}$";
         return !email.matches(regex);
@@ -430,35 +763,15 @@ public class CommandExecutor {
         return new EmailPasswordCommand(email, password);
     }
 
-    private boolean notLoggedIn(Integer scHash) {
-        return !users.loggedUsers().containsKey(scHash);
-    }
-
-    private String getPlaylist(String playlistName) {
-        Path playlistsFilePath = Path.of(PLAYLISTS_FILE);
-        if (Files.exists(playlistsFilePath)) {
-            try (BufferedReader br = Files.newBufferedReader(playlistsFilePath)) {
-                String line;
-                while ((line = br.readLine()) != null) {
-                    if (line.startsWith(playlistName)) {
-                        return line;
-                    }
-                }
-                return "wrong name";
-            } catch (IOException e) {
-                logger.logException(e);
-                throw new RuntimeException("There is a problem with the playlists file", e);
-            }
-        }
-
-        return "";
+    private boolean notLoggedIn(Session session) {
+        return session.user() == null;
     }
 
-    private String validateTwoPartCommand(int scHash, String message) {
+    private String validateTwoPartCommand(Session session, String message) {
         if (!message.contains(" ")) {
             return "[ Unknown command ]";
         }
-        if (notLoggedIn(scHash)) {
+        if (notLoggedIn(session)) {
             return "[ You are not logged in ]";
         }
         return "";
@@ -0,0 +1,99 @@
+package bg.sofia.uni.fmi.mjt.spotify.command;
+
+import bg.sofia.uni.fmi.mjt.spotify.jfr.CommandEvent;
+import bg.sofia.uni.fmi.mjt.spotify.metrics.LatencyHistogram;
+import bg.sofia.uni.fmi.mjt.spotify.metrics.LatencySummary;
+import bg.sofia.uni.fmi.mjt.spotify.metrics.ServerMetrics;
+import bg.sofia.uni.fmi.mjt.spotify.session.Session;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class is responsible for dispatching commands to their handlers. The verb of a command is
+ * everything before the first space; it is parsed once and looked up in a hash table, so dispatch
+ * costs the same however many commands are registered, and a verb never matches another verb
+ * it is a prefix of ("play" doesn't shadow "playlist").
+ * <p>
+ * The latency of every command is recorded in its histogram of the {@link ServerMetrics}
+ * and as a {@link CommandEvent} for Flight Recorder.
+ */
+public class CommandRegistry {
+    public static final String UNKNOWN_COMMAND = "[ Unknown command ]";
+
+    private record Entry(PlaybackCommand command, boolean takesArguments, LatencyHistogram latency) {}
+
+    private final Map<String, Entry> commands;
+    private final ServerMetrics metrics;
+
+    public CommandRegistry(ServerMetrics metrics) {
+        this.commands = new ConcurrentHashMap<>();
+        this.metrics = metrics;
+    }
+
+    /**
+     * @param takesArguments false if the command is valid only as the verb alone
+     * @throws IllegalArgumentException if the verb contains a space or is already registered
+     */
+    public void register(String verb, boolean takesArguments, Command command) {
+        registerPlayback(verb, takesArguments,
+                (session, message) -> CommandReply.of(command.execute(session, message)));
+    }
+
+    /**
+     * Registers a command that may start or stop the song of the session.
+     *
+     * @param takesArguments false if the command is valid only as the verb alone
+     * @throws IllegalArgumentException if the verb contains a space or is already registered
+     */
+    public void registerPlayback(String verb, boolean takesArguments, PlaybackCommand command) {
+        if (verb.isEmpty() || verb.contains(" ")) {
+            throw new IllegalArgumentException("Invalid command verb: " + verb);
+        }
+        if (commands.putIfAbsent(verb, new Entry(command, takesArguments, metrics.commandLatency(verb)))
+                != null) {
+            throw new IllegalArgumentException("Command " + verb + " is already registered");
+        }
+    }
+
+    /**
+     * @return the reply of the handler of the command or "Unknown command" if there is none
+     */
+    public CommandReply dispatch(Session session, String message) {
+        String verb = verb(message);
+        Entry entry = commands.get(verb);
+        if (entry == null || !entry.takesArguments() && verb.length() != message.length()) {
+            return CommandReply.of(UNKNOWN_COMMAND);
+        }
+
+        CommandEvent event = new CommandEvent(verb, session == null ? 0 : session.id());
+        event.begin();
+        long start = System.nanoTime();
+        try {
+            return entry.command().execute(session, message);
+        } finally {
+            entry.latency().record(System.nanoTime() - start);
+            event.commit();
+        }
+    }
+
+    /**
+     * @return everything before the first space of the command
+     */
+    public static String verb(String message) {
+        int wsIndex = message.indexOf(' ');
+        return wsIndex < 0 ? message : message.substring(0, wsIndex);
+    }
+
+    /**
+     * @return verb -> latency summary of the command, ordered by verb
+     */
+    public Map<String, LatencySummary> statistics() {
+        Map<String, LatencySummary> statistics = new TreeMap<>();
+        for (Map.Entry<String, Entry> command : commands.entrySet()) {
+            statistics.put(command.getKey(), command.getValue().latency().summary());
+        }
+        return statistics;
+    }
+}
@@ -0,0 +1,44 @@
+package bg.sofia.uni.fmi.mjt.spotify.command;
+
+/**
+ * The reply to a command together with its effect on the playback of the session, so the connections
+ * start and stop streams by the outcome of the command instead of by the text of the reply.
+ *
+ * @param song the started song if the playback is {@link Playback#STARTED}, null otherwise
+ */
+public record CommandReply(String text, Playback playback, String song) {
+
+    public enum Playback {
+        /**
+         * The command didn't change what the session plays.
+         */
+        UNCHANGED,
+        /**
+         * The command started a song, replacing the one that was playing.
+         */
+        STARTED,
+        /**
+         * The command stopped the song of the session, if it was playing any.
+         */
+        STOPPED
+    }
+
+    public static CommandReply of(String text) {
+        return new CommandReply(text, Playback.UNCHANGED, null);
+    }
+
+    public static CommandReply started(String text, String song) {
+        return new CommandReply(text, Playback.STARTED, song);
+    }
+
+    public static CommandReply stopped(String text) {
+        return new CommandReply(text, Playback.STOPPED, null);
+    }
+
+    /**
+     * @return the same reply with another text
+     */
+    public CommandReply withText(String replacement) {
+        return new CommandReply(replacement, playback, song);
+    }
+}
@@ -0,0 +1,16 @@
+package bg.sofia.uni.fmi.mjt.spotify.command;
+
+import bg.sofia.uni.fmi.mjt.spotify.session.Session;
+
+/**
+ * This interface is responsible for handling a client command that may start or stop the song of the session,
+ * registered by its verb in a {@link CommandRegistry}.
+ */
+@FunctionalInterface
+public interface PlaybackCommand {
+    /**
+     * @param message the whole command line, including the verb
+     * @return the reply to the client and the effect of the command on the playback
+     */
+    CommandReply execute(Session session, String message);
+}
@@ -0,0 +1,258 @@
+package bg.sofia.uni.fmi.mjt.spotify.connection;
+
+import bg.sofia.uni.fmi.mjt.spotify.command.CommandExecutor;
+import bg.sofia.uni.fmi.mjt.spotify.command.CommandReply;
+import bg.sofia.uni.fmi.mjt.spotify.exceptions.ExceptionLogger;
+import bg.sofia.uni.fmi.mjt.spotify.jfr.SongStreamEvent;
+import bg.sofia.uni.fmi.mjt.spotify.metrics.ServerMetrics;
+import bg.sofia.uni.fmi.mjt.spotify.streaming.AudioStream;
+import bg.sofia.uni.fmi.mjt.spotify.streaming.Frames;
+import bg.sofia.uni.fmi.mjt.spotify.streaming.StreamingMode;
+
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * This class is responsible for serving a single client with blocking I/O on its own thread.
+ * A song is streamed by a second thread of the connection; both write whole frames under
+ * the write lock, so replies are interleaved between audio frames. The streaming thread opens the next song
+ * of the play queue in advance and continues with it once the current song has been written to the end.
+ */
+public class BlockingConnection implements Runnable {
+    private static final int BUFFER_SIZE = 1024;
+    private static final String STREAMING_FAILED = "[ There is a problem with streaming the song ]";
+    private final SocketChannel channel;
+    private final CommandExecutor cmdExec;
+    private final Executor streamExecutor;
+    private final StreamingMode streamingMode;
+    private final ServerMetrics metrics;
+    private final ExceptionLogger logger;
+    private final Lock writeLock;
+    private AudioStream stream;
+
+    public BlockingConnection(SocketChannel channel, CommandExecutor cmdExec, Executor streamExecutor,
+                              StreamingMode streamingMode, ServerMetrics metrics, ExceptionLogger logger) {
+        this.channel = channel;
+        this.cmdExec = cmdExec;
+        this.streamExecutor = streamExecutor;
+        this.streamingMode = streamingMode;
+        this.metrics = metrics;
+        this.logger = logger;
+        this.writeLock = new ReentrantLock();
+    }
+
+    @Override
+    public void run() {
+        LineFramer framer = new LineFramer(new BufferPool(BUFFER_SIZE, 1), new TextCodec());
+        long sessionId = cmdExec.openSession();
+        try (channel) {
+            int r;
+            while ((r = channel.read(framer.readBuffer())) >= 0) {
+                metrics.bytesRead(r);
+                String message;
+                while ((message = framer.nextLine()) != null) {
+                    long mark = metrics.allocations().mark();
+                    CommandReply reply = cmdExec.executeAsync(sessionId, message, Runnable::run).join();
+                    metrics.allocations().recordCommand(mark);
+                    handleReply(sessionId, reply);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.logException(e);
+        } finally {
+            stopStream();
+            cmdExec.closeSession(sessionId);
+        }
+    }
+
+    /**
+     * Writes the reply and starts or stops the stream. A song that can't be opened is skipped in favour
+     * of the next one of the queue, and if there is none the command replies with an error.
+     */
+    private void handleReply(long sessionId, CommandReply reply) throws IOException {
+        while (reply.playback() == CommandReply.Playback.STARTED) {
+            AudioStream audioStream = openQueuedSong(sessionId, reply.song());
+            if (audioStream != null) {
+                startStream(sessionId, reply, audioStream);
+                return;
+            }
+            CommandReply next = cmdExec.advanceQueue(sessionId, reply.song());
+            reply = next != null ? next : CommandReply.stopped(STREAMING_FAILED + System.lineSeparator());
+        }
+
+        writeLock.lock();
+        try {
+            if (reply.playback() == CommandReply.Playback.STOPPED && stopStream()) {
+                write(Frames.audioEnd());
+            }
+            write(Frames.reply(reply.text()));
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void startStream(long sessionId, CommandReply reply, AudioStream audioStream) throws IOException {
+        writeLock.lock();
+        try {
+            stopStream();
+            write(Frames.audioHeader(reply.text()));
+            stream = audioStream;
+            metrics.streamStarted();
+        } finally {
+            writeLock.unlock();
+        }
+        streamExecutor.execute(() -> streamSong(sessionId, reply.song(), audioStream));
+    }
+
+    /**
+     * Streams the song frame by frame and continues with the next song of the play queue.
+     * The write lock is only held while a frame is written, the queue is advanced and the next song
+     * is opened without it, so command replies don't wait behind file opens.
+     */
+    private void streamSong(long sessionId, String song, AudioStream audioStream) {
+        boolean prefetched = false;
+        String nextSong = null;
+        AudioStream nextStream = null;
+        try {
+            while (true) {
+                if (!prefetched) {
+                    prefetched = true;
+                    nextSong = cmdExec.getNextQueued(sessionId);
+                    nextStream = nextSong == null ? null : openQueuedSong(sessionId, nextSong);
+                    if (nextStream == null) {
+                        nextSong = null;
+                    }
+                }
+
+                writeLock.lock();
+                try {
+                    if (stream != audioStream) {
+                        return;
+                    }
+                    if (!audioStream.isFinished()) {
+                        transferFrame(audioStream);
+                        continue;
+                    }
+                    stopStream();
+                    write(Frames.audioEnd());
+                } finally {
+                    writeLock.unlock();
+                }
+
+                CommandReply reply;
+                while (true) {
+                    reply = cmdExec.advanceQueue(sessionId, song);
+                    song = reply == null ? null : reply.song();
+                    if (song == null) {
+                        return;
+                    }
+                    if (song.equals(nextSong)) {
+                        break;
+                    }
+                    closeStream(nextStream);
+                    nextStream = openQueuedSong(sessionId, song);
+                    if (nextStream != null) {
+                        break;
+                    }
+                    // the song can't be opened, so it is skipped in favour of the next one of the queue
+                }
+
+                writeLock.lock();
+                try {
+                    if (stream != null) {
+                        // a command started another song meanwhile
+                        return;
+                    }
+                    write(Frames.audioNext(reply.text()));
+                    stream = audioStream = nextStream;
+                    metrics.streamStarted();
+                } finally {
+                    writeLock.unlock();
+                }
+                prefetched = false;
+                nextStream = null;
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.logException(e);
+        } finally {
+            closeStream(nextStream);
+        }
+    }
+
+    /**
+     * @return the stream of the song or null if it can't be opened, which is only logged
+     */
+    private AudioStream openQueuedSong(long sessionId, String song) {
+        try {
+            return openSong(sessionId, song);
+        } catch (IOException | RuntimeException e) {
+            logger.logException(e);
+            return null;
+        }
+    }
+
+    /**
+     * Writes the next audio data frame as a whole, so it is never interleaved with a reply.
+     * The channel is blocking, so every transfer makes progress.
+     */
+    private void transferFrame(AudioStream audioStream) throws IOException {
+        long written = audioStream.bytesWritten();
+        boolean frameWritten;
+        do {
+            frameWritten = audioStream.transfer(channel);
+        } while (!frameWritten);
+        metrics.bytesWritten(audioStream.bytesWritten() - written);
+    }
+
+    private AudioStream openSong(long sessionId, String song) throws IOException {
+        try {
+            return SongStreamEvent.record(streamingMode.open(song, cmdExec.getSongCache()),
+                    song, sessionId, streamingMode.name());
+        } catch (UnsupportedAudioFileException e) {
+            logger.logException(e);
+            throw new RuntimeException("There is a problem with streaming the song", e);
+        }
+    }
+
+    private void closeStream(AudioStream audioStream) {
+        if (audioStream == null) {
+            return;
+        }
+        try {
+            audioStream.close();
+        } catch (IOException e) {
+            logger.logException(e);
+        }
+    }
+
+    private boolean stopStream() {
+        writeLock.lock();
+        try {
+            if (stream == null) {
+                return false;
+            }
+            metrics.streamStopped();
+            stream.close();
+            stream = null;
+            return true;
+        } catch (IOException e) {
+            logger.logException(e);
+            stream = null;
+            return true;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void write(ByteBuffer frame) throws IOException {
+        while (frame.hasRemaining()) {
+            metrics.bytesWritten(channel.write(frame));
+        }
+    }
+}
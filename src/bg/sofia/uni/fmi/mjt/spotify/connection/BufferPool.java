@@ -0,0 +1,52 @@
+package bg.sofia.uni.fmi.mjt.spotify.connection;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * This class is responsible for recycling the direct buffers used for connection I/O.
+ * A pool is confined to a single thread (a reactor or a blocking connection), so it needs no synchronization
+ * and acquiring and releasing a buffer allocates nothing once the pool is warm.
+ */
+public class BufferPool {
+    private final int bufferSize;
+    private final int maxPooled;
+    private final Deque<ByteBuffer> free;
+    private long allocated;
+
+    public BufferPool(int bufferSize, int maxPooled) {
+        this.bufferSize = bufferSize;
+        this.maxPooled = maxPooled;
+        this.free = new ArrayDeque<>(maxPooled);
+    }
+
+    public ByteBuffer acquire() {
+        ByteBuffer buffer = free.pollFirst();
+        if (buffer == null) {
+            allocated++;
+            return ByteBuffer.allocateDirect(bufferSize);
+        }
+        return buffer.clear();
+    }
+
+    /**
+     * Returns a buffer to the pool. Buffers which were not acquired from a pool of this size are ignored.
+     */
+    public void release(ByteBuffer buffer) {
+        if (buffer.isDirect() && buffer.capacity() == bufferSize && free.size() < maxPooled) {
+            free.addFirst(buffer);
+        }
+    }
+
+    public int bufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * @return how many buffers this pool has ever allocated
+     */
+    public long allocated() {
+        return allocated;
+    }
+}
@@ -0,0 +1,250 @@
+package bg.sofia.uni.fmi.mjt.spotify.connection;
+
+import bg.sofia.uni.fmi.mjt.spotify.metrics.ServerMetrics;
+import bg.sofia.uni.fmi.mjt.spotify.streaming.AudioStream;
+import bg.sofia.uni.fmi.mjt.spotify.streaming.Frames;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * This class is responsible for the state of a single client connection, attached to its selection key.
+ * The connection carries the id of its session, so commands are executed without any lookup by channel.
+ * Incoming bytes are framed into commands by the connection's own {@link LineFramer}.
+ * Command replies are queued and written before any further audio frames, so commands are never
+ * stuck behind a whole song. Writes are non-blocking and resume on the next OP_WRITE.
+ * <p>
+ * While a song is streamed, the stream of the next song of the play queue may already be opened (prefetched),
+ * so that it can follow the end of the current song right away.
+ */
+public class ClientConnection {
+    private static final int MAX_FRAMES_PER_FLUSH = 16;
+    private static final int MAX_PENDING_COMMANDS = 64;
+
+    private final long sessionId;
+    private final BufferPool pool;
+    private final ServerMetrics metrics;
+    private final LineFramer framer;
+    private final Deque<ByteBuffer> outbound;
+    private final Deque<String> pendingCommands;
+    private boolean commandRunning;
+    private long lastActivity;
+    private AudioStream stream;
+    private String song;
+    private String finishedSong;
+    private String prefetchedSong;
+    private AudioStream prefetched;
+
+    public ClientConnection(long sessionId, BufferPool pool, TextCodec codec, ServerMetrics metrics) {
+        this.sessionId = sessionId;
+        this.pool = pool;
+        this.metrics = metrics;
+        framer = new LineFramer(pool, codec);
+        outbound = new ArrayDeque<>();
+        pendingCommands = new ArrayDeque<>();
+    }
+
+    public long sessionId() {
+        return sessionId;
+    }
+
+    /**
+     * @return true while a command of the connection is being executed
+     */
+    public boolean commandRunning() {
+        return commandRunning;
+    }
+
+    /**
+     * Records that the client was read from or written to.
+     */
+    public void touch(long nowMillis) {
+        lastActivity = nowMillis;
+    }
+
+    public long lastActivity() {
+        return lastActivity;
+    }
+
+    public LineFramer framer() {
+        return framer;
+    }
+
+    /**
+     * @return false if too many pipelined commands are waiting, so reading should pause until they run
+     */
+    public boolean acceptsCommands() {
+        return pendingCommands.size() < MAX_PENDING_COMMANDS;
+    }
+
+    /**
+     * @return the selection key interest set matching the state of the connection
+     */
+    public int interestOps() {
+        return (acceptsCommands() ? SelectionKey.OP_READ : 0) | (hasPendingWrites() ? SelectionKey.OP_WRITE : 0);
+    }
+
+    /**
+     * @return true if the command can be executed right away, false if it was queued
+     * behind the command that is still running
+     */
+    public boolean startCommand(String message) {
+        if (commandRunning) {
+            pendingCommands.addLast(message);
+            return false;
+        }
+        commandRunning = true;
+        return true;
+    }
+
+    /**
+     * @return the next queued command, which is now running, or null if there is none
+     */
+    public String finishCommand() {
+        String next = pendingCommands.pollFirst();
+        commandRunning = next != null;
+        return next;
+    }
+
+    public void enqueue(ByteBuffer frame) {
+        outbound.addLast(frame);
+    }
+
+    public void startStream(AudioStream audioStream, String streamedSong) throws IOException {
+        stopStream();
+        stream = audioStream;
+        song = streamedSong;
+        metrics.streamStarted();
+    }
+
+    public boolean streaming() {
+        return stream != null;
+    }
+
+    /**
+     * @return the song that has been streamed to the end since the last call or null if there is none
+     */
+    public String takeFinishedSong() {
+        String finished = finishedSong;
+        finishedSong = null;
+        return finished;
+    }
+
+    /**
+     * @return the song whose stream is prefetched or is being opened, null if there is none
+     */
+    public String prefetchedSong() {
+        return prefetchedSong;
+    }
+
+    /**
+     * Records that the stream of the song is being opened, dropping any other prefetched stream.
+     */
+    public void prefetching(String nextSong) throws IOException {
+        dropPrefetched();
+        prefetchedSong = nextSong;
+    }
+
+    /**
+     * @return false if the opened stream is no longer wanted, in which case the caller should close it
+     */
+    public boolean prefetched(String nextSong, AudioStream nextStream) {
+        if (prefetched != null || !nextSong.equals(prefetchedSong)) {
+            return false;
+        }
+        prefetched = nextStream;
+        return true;
+    }
+
+    /**
+     * @return the prefetched stream of the song or null if it hasn't been opened, any other prefetched
+     * stream is closed
+     */
+    public AudioStream takePrefetched(String nextSong) throws IOException {
+        if (prefetched == null || !nextSong.equals(prefetchedSong)) {
+            dropPrefetched();
+            return null;
+        }
+        AudioStream taken = prefetched;
+        prefetched = null;
+        prefetchedSong = null;
+        return taken;
+    }
+
+    public void dropPrefetched() throws IOException {
+        AudioStream dropped = prefetched;
+        prefetched = null;
+        prefetchedSong = null;
+        if (dropped != null) {
+            dropped.close();
+        }
+    }
+
+    /**
+     * @return true if a song was being streamed
+     */
+    public boolean stopStream() throws IOException {
+        if (stream == null) {
+            return false;
+        }
+        metrics.streamStopped();
+        AudioStream stopped = stream;
+        stream = null;
+        song = null;
+        stopped.close();
+        return true;
+    }
+
+    public boolean hasPendingWrites() {
+        return !outbound.isEmpty() || stream != null;
+    }
+
+    /**
+     * Writes as much as the socket accepts without blocking, at most a bounded number of frames,
+     * so that one listener cannot monopolize the selector thread.
+     *
+     * @return true if everything queued so far has been written
+     */
+    public boolean flush(SocketChannel channel) throws IOException {
+        for (int frames = 0; frames < MAX_FRAMES_PER_FLUSH; frames++) {
+            ByteBuffer frame = outbound.peekFirst();
+            if (frame != null) {
+                metrics.bytesWritten(channel.write(frame));
+                if (frame.hasRemaining()) {
+                    return false;
+                }
+                pool.release(outbound.removeFirst());
+            } else if (stream == null) {
+                return true;
+            } else if (stream.isFinished()) {
+                finishedSong = song;
+                stopStream();
+                outbound.addLast(Frames.audioEnd());
+            } else {
+                long written = stream.bytesWritten();
+                boolean transferred = stream.transfer(channel);
+                metrics.bytesWritten(stream.bytesWritten() - written);
+                if (!transferred) {
+                    return false;
+                }
+            }
+        }
+
+        return !hasPendingWrites();
+    }
+
+    public void close() throws IOException {
+        for (ByteBuffer frame : outbound) {
+            pool.release(frame);
+        }
+        outbound.clear();
+        framer.release();
+        pendingCommands.clear();
+        stopStream();
+        dropPrefetched();
+    }
+}
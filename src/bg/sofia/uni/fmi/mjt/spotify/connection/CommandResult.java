@@ -0,0 +1,9 @@
+package bg.sofia.uni.fmi.mjt.spotify.connection;
+
+import bg.sofia.uni.fmi.mjt.spotify.command.CommandReply;
+import bg.sofia.uni.fmi.mjt.spotify.streaming.AudioStream;
+
+/**
+ * The reply to a command and, for the commands that start a song, the already opened stream of the song.
+ */
+record CommandResult(CommandReply reply, AudioStream stream) {}
@@ -0,0 +1,81 @@
+package bg.sofia.uni.fmi.mjt.spotify.connection;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * This class is responsible for splitting the bytes received from a client into commands.
+ * Every command is a line terminated by '\n' (an optional preceding '\r' is dropped), so one read
+ * may contain several pipelined commands or only a part of one.
+ * The framer holds a pooled buffer only while it has unprocessed bytes, so idle connections hold none.
+ */
+public class LineFramer {
+    private static final int MAX_COMMAND_LENGTH = 64 * 1024;
+
+    private final BufferPool pool;
+    private final TextCodec codec;
+    private ByteBuffer buffer;
+    private int scanned;
+
+    public LineFramer(BufferPool pool, TextCodec codec) {
+        this.pool = pool;
+        this.codec = codec;
+    }
+
+    /**
+     * @return the buffer to read the next bytes into, grown if it is full
+     * @throws IOException if a single command exceeds the maximum command length
+     */
+    public ByteBuffer readBuffer() throws IOException {
+        if (buffer == null) {
+            buffer = pool.acquire();
+        } else if (!buffer.hasRemaining()) {
+            if (buffer.capacity() >= MAX_COMMAND_LENGTH) {
+                throw new IOException("Command longer than " + MAX_COMMAND_LENGTH + " bytes");
+            }
+            ByteBuffer grown = ByteBuffer.allocateDirect(Math.min(buffer.capacity() * 2, MAX_COMMAND_LENGTH));
+            buffer.flip();
+            grown.put(buffer);
+            pool.release(buffer);
+            buffer = grown;
+        }
+        return buffer;
+    }
+
+    /**
+     * @return the next complete command or null if no full line has been received yet
+     */
+    public String nextLine() {
+        if (buffer == null) {
+            return null;
+        }
+
+        int end = buffer.position();
+        for (int i = scanned; i < end; i++) {
+            if (buffer.get(i) == '\n') {
+                int length = i > 0 && buffer.get(i - 1) == '\r' ? i - 1 : i;
+                buffer.position(0).limit(length);
+                String line = codec.decode(buffer);
+
+                buffer.limit(end).position(i + 1);
+                buffer.compact();
+                scanned = 0;
+                return line;
+            }
+        }
+
+        scanned = end;
+        if (end == 0) {
+            release();
+        }
+        return null;
+    }
+
+    public void release() {
+        if (buffer != null) {
+            pool.release(buffer);
+            buffer = null;
+            scanned = 0;
+        }
+    }
+}
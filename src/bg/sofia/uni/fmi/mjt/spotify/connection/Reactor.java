@@ -0,0 +1,444 @@
+package bg.sofia.uni.fmi.mjt.spotify.connection;
+
+import bg.sofia.uni.fmi.mjt.spotify.command.CommandExecutor;
+import bg.sofia.uni.fmi.mjt.spotify.command.CommandReply;
+import bg.sofia.uni.fmi.mjt.spotify.exceptions.ExceptionLogger;
+import bg.sofia.uni.fmi.mjt.spotify.jfr.SongStreamEvent;
+import bg.sofia.uni.fmi.mjt.spotify.metrics.AllocationMetrics;
+import bg.sofia.uni.fmi.mjt.spotify.metrics.ServerMetrics;
+import bg.sofia.uni.fmi.mjt.spotify.streaming.AudioStream;
+import bg.sofia.uni.fmi.mjt.spotify.streaming.Frames;
+import bg.sofia.uni.fmi.mjt.spotify.streaming.StreamingMode;
+
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+
+/**
+ * This class is responsible for the I/O of a subset of the client connections on its own selector thread.
+ * Commands are handed to the command executor and their replies come back as tasks run on the selector
+ * thread, so all the state of a connection is only touched by its reactor. Commands of one connection
+ * are executed one at a time, in the order they were received. The session of a closed connection
+ * is closed only once its running command has completed. Connections handed over while the reactor
+ * is shutting down are closed without being registered.
+ * <p>
+ * Connections that are neither read from nor written to for the idle timeout are closed. Their deadlines
+ * are kept in a {@link TimerWheel}, which the selector loop advances at least once per tick.
+ * <p>
+ * While a song is streamed, the stream of the next song of the session's play queue is opened in advance
+ * on the command executor. Once the song has been written to the end, the next one follows right after its
+ * AUDIO_END frame, so the client receives the start of the next song while it still plays the previous one.
+ */
+public class Reactor implements Runnable {
+    private static final int BUFFER_SIZE = 16 * 1024;
+    private static final int MAX_POOLED_BUFFERS = 1024;
+    private static final int TIMER_WHEEL_SLOTS = 512;
+    private static final long TIMER_TICK_MILLIS = 1000;
+    private static final String STREAMING_FAILED = "[ There is a problem with streaming the song ]";
+    private final Selector selector;
+    private final Queue<Runnable> tasks;
+    private final Queue<SocketChannel> pending;
+    private final BufferPool pool;
+    private final TextCodec codec;
+    private final AllocationMetrics allocationMetrics;
+    private final ServerMetrics metrics;
+    private final CommandExecutor cmdExec;
+    private final Executor commandExecutor;
+    private final StreamingMode streamingMode;
+    private final ExceptionLogger logger;
+    private final long idleTimeoutMillis;
+    private final Runnable connectionClosed;
+    private final TimerWheel<SelectionKey> idleTimers;
+    private long now;
+    private volatile boolean running;
+
+    /**
+     * @param idleTimeoutMillis how long a connection may stay without any I/O before it is closed
+     * @param connectionClosed  called once for every connection closed by this reactor
+     */
+    public Reactor(CommandExecutor cmdExec, Executor commandExecutor, StreamingMode streamingMode,
+                   ServerMetrics metrics, ExceptionLogger logger, long idleTimeoutMillis,
+                   Runnable connectionClosed) throws IOException {
+        this.selector = Selector.open();
+        this.tasks = new ConcurrentLinkedQueue<>();
+        this.pending = new ConcurrentLinkedQueue<>();
+        this.pool = new BufferPool(BUFFER_SIZE, MAX_POOLED_BUFFERS);
+        this.codec = new TextCodec();
+        this.allocationMetrics = metrics.allocations();
+        this.metrics = metrics;
+        this.cmdExec = cmdExec;
+        this.commandExecutor = commandExecutor;
+        this.streamingMode = streamingMode;
+        this.logger = logger;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.connectionClosed = connectionClosed;
+        this.now = System.currentTimeMillis();
+        this.idleTimers = new TimerWheel<>(TIMER_WHEEL_SLOTS, TIMER_TICK_MILLIS, now);
+        this.running = true;
+    }
+
+    /**
+     * Hands a newly accepted connection over to this reactor. Safe to call from any thread.
+     */
+    public void register(SocketChannel channel) {
+        pending.add(channel);
+        if (running) {
+            selector.wakeup();
+        } else {
+            // the reactor may have stopped before seeing the channel
+            closePending();
+        }
+    }
+
+    private void registerPending() {
+        SocketChannel channel;
+        while ((channel = pending.poll()) != null) {
+            try {
+                ClientConnection connection = new ClientConnection(cmdExec.openSession(), pool, codec, metrics);
+                connection.touch(now);
+                SelectionKey key = channel.register(selector, SelectionKey.OP_READ, connection);
+                idleTimers.schedule(key, now + idleTimeoutMillis);
+            } catch (ClosedChannelException e) {
+                logger.logException(e);
+                connectionClosed.run();
+            }
+        }
+    }
+
+    private void closePending() {
+        SocketChannel channel;
+        while ((channel = pending.poll()) != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                logger.logException(e);
+            }
+            connectionClosed.run();
+        }
+    }
+
+    public void shutdown() {
+        running = false;
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        try (selector) {
+            while (running) {
+                selector.select(idleTimers.tickMillis());
+                long start = System.nanoTime();
+                long mark = allocationMetrics.mark();
+                now = System.currentTimeMillis();
+                registerPending();
+                runTasks();
+
+                Iterator<SelectionKey> keyIterator = selector.selectedKeys().iterator();
+                while (keyIterator.hasNext()) {
+                    SelectionKey key = keyIterator.next();
+                    keyIterator.remove();
+                    manageKey(key);
+                }
+                idleTimers.advance(now, this::checkIdle);
+                allocationMetrics.recordSelectorIteration(mark);
+                metrics.selectorLoop().record(System.nanoTime() - start);
+            }
+
+            for (SelectionKey key : selector.keys()) {
+                closeConnection(key);
+            }
+        } catch (IOException e) {
+            logger.logException(e);
+            throw new RuntimeException("There is a problem with the channel communication", e);
+        } finally {
+            running = false;
+            closePending();
+        }
+    }
+
+    private void execute(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            task.run();
+        }
+    }
+
+    private void manageKey(SelectionKey key) {
+        try {
+            if (key.isValid() && key.isReadable()) {
+                read(key);
+            }
+            if (key.isValid() && key.isWritable()) {
+                ClientConnection connection = (ClientConnection) key.attachment();
+                connection.touch(now);
+                connection.flush((SocketChannel) key.channel());
+                advanceQueue(key, connection);
+                key.interestOps(connection.interestOps());
+            }
+        } catch (IOException e) {
+            logger.logException(e);
+            closeConnection(key);
+        }
+    }
+
+    private void read(SelectionKey key) throws IOException {
+        SocketChannel sc = (SocketChannel) key.channel();
+        ClientConnection connection = (ClientConnection) key.attachment();
+        LineFramer framer = connection.framer();
+        connection.touch(now);
+
+        int r = sc.read(framer.readBuffer());
+        if (r < 0) {
+            closeConnection(key);
+            return;
+        }
+        metrics.bytesRead(r);
+
+        String message;
+        while ((message = framer.nextLine()) != null) {
+            if (connection.startCommand(message)) {
+                dispatch(key, message);
+            }
+        }
+        key.interestOps(connection.interestOps());
+    }
+
+    private void dispatch(SelectionKey key, String message) {
+        long sessionId = ((ClientConnection) key.attachment()).sessionId();
+        cmdExec.executeAsync(sessionId, message, this::runMeasured)
+                .thenApply(reply -> openStream(sessionId, reply))
+                .whenComplete((result, failure) -> {
+                    if (failure != null) {
+                        logger.logException(failure instanceof Exception ? (Exception) failure : new Exception(failure));
+                        execute(() -> {
+                            closeConnection(key);
+                            cmdExec.closeSession(sessionId);
+                        });
+                    } else {
+                        execute(() -> complete(key, result));
+                    }
+                });
+    }
+
+    private void runMeasured(Runnable command) {
+        commandExecutor.execute(() -> {
+            long mark = allocationMetrics.mark();
+            command.run();
+            allocationMetrics.recordCommand(mark);
+        });
+    }
+
+    /**
+     * Opens the stream of the song started by the command. A song that can't be opened is skipped
+     * in favour of the next one of the queue, and if there is none the command replies with an error.
+     */
+    private CommandResult openStream(long sessionId, CommandReply reply) {
+        while (reply.playback() == CommandReply.Playback.STARTED) {
+            try {
+                return new CommandResult(reply, openSong(sessionId, reply.song()));
+            } catch (RuntimeException e) {
+                CommandReply next = cmdExec.advanceQueue(sessionId, reply.song());
+                reply = next != null ? next : CommandReply.stopped(STREAMING_FAILED + System.lineSeparator());
+            }
+        }
+        return new CommandResult(reply, null);
+    }
+
+    private AudioStream openSong(long sessionId, String song) {
+        try {
+            AudioStream stream = streamingMode.open(song, cmdExec.getSongCache());
+            return SongStreamEvent.record(stream, song, sessionId, streamingMode.name());
+        } catch (IOException | UnsupportedAudioFileException e) {
+            logger.logException(e);
+            throw new RuntimeException("There is a problem with streaming the song", e);
+        }
+    }
+
+    private void complete(SelectionKey key, CommandResult result) {
+        try {
+            ClientConnection connection = (ClientConnection) key.attachment();
+            if (!key.isValid()) {
+                closeStream(result.stream());
+                cmdExec.closeSession(connection.sessionId());
+                return;
+            }
+
+            handleReply(connection, result);
+            prefetch(key, connection);
+            connection.flush((SocketChannel) key.channel());
+            advanceQueue(key, connection);
+
+            String next = connection.finishCommand();
+            if (next != null) {
+                dispatch(key, next);
+            }
+            key.interestOps(connection.interestOps());
+        } catch (IOException e) {
+            logger.logException(e);
+            closeConnection(key);
+        }
+    }
+
+    private void handleReply(ClientConnection connection, CommandResult result) throws IOException {
+        CommandReply reply = result.reply();
+        if (result.stream() != null) {
+            connection.startStream(result.stream(), reply.song());
+            connection.enqueue(codec.encodeFrame(Frames.AUDIO_HEADER, reply.text(), pool));
+            return;
+        }
+
+        if (reply.playback() == CommandReply.Playback.STOPPED && connection.stopStream()) {
+            connection.enqueue(Frames.audioEnd());
+        }
+        connection.enqueue(codec.encodeFrame(Frames.REPLY, reply.text(), pool));
+    }
+
+    /**
+     * Opens the stream of the next song of the queue in advance, unless it is already opened or being opened.
+     * A failed prefetch is only logged, the song is opened again once it is its turn.
+     */
+    private void prefetch(SelectionKey key, ClientConnection connection) throws IOException {
+        String next = connection.streaming() ? cmdExec.getNextQueued(connection.sessionId()) : null;
+        if (next == null) {
+            connection.dropPrefetched();
+            return;
+        }
+        if (next.equals(connection.prefetchedSong())) {
+            return;
+        }
+
+        connection.prefetching(next);
+        long sessionId = connection.sessionId();
+        CompletableFuture.supplyAsync(() -> openSong(sessionId, next), commandExecutor)
+                .thenAccept(stream -> execute(() -> {
+                    if (!key.isValid() || !connection.prefetched(next, stream)) {
+                        closeStream(stream);
+                    }
+                }));
+    }
+
+    /**
+     * Starts the next song of the queue once the previous one has been written to the end,
+     * with the prefetched stream if it is the right one.
+     */
+    private void advanceQueue(SelectionKey key, ClientConnection connection) throws IOException {
+        String finished = connection.takeFinishedSong();
+        if (finished != null) {
+            playNextQueued(key, connection, finished);
+        }
+    }
+
+    /**
+     * Moves the session on from the finished song to the next one of its queue. A song that can't be opened
+     * is logged and skipped in favour of the one after it.
+     */
+    private void playNextQueued(SelectionKey key, ClientConnection connection, String finished) throws IOException {
+        long sessionId = connection.sessionId();
+        CommandReply reply = cmdExec.advanceQueue(sessionId, finished);
+        String song = reply == null ? null : reply.song();
+        if (song == null) {
+            connection.dropPrefetched();
+            return;
+        }
+
+        AudioStream stream = connection.takePrefetched(song);
+        if (stream != null) {
+            startQueuedSong(key, connection, reply.text(), song, stream);
+            return;
+        }
+        CompletableFuture.supplyAsync(() -> openSong(sessionId, song), commandExecutor)
+                .whenComplete((opened, failure) -> execute(() -> {
+                    try {
+                        if (failure != null) {
+                            if (key.isValid() && !connection.streaming()) {
+                                playNextQueued(key, connection, song);
+                                key.interestOps(connection.interestOps());
+                            }
+                        } else if (!key.isValid() || connection.streaming()
+                                || !song.equals(cmdExec.getNowPlaying(sessionId))) {
+                            closeStream(opened);
+                        } else {
+                            startQueuedSong(key, connection, reply.text(), song, opened);
+                            key.interestOps(connection.interestOps());
+                        }
+                    } catch (IOException e) {
+                        logger.logException(e);
+                        closeConnection(key);
+                    }
+                }));
+    }
+
+    private void startQueuedSong(SelectionKey key, ClientConnection connection, String reply, String song,
+                                 AudioStream stream) throws IOException {
+        connection.startStream(stream, song);
+        connection.enqueue(codec.encodeFrame(Frames.AUDIO_NEXT, reply, pool));
+        prefetch(key, connection);
+    }
+
+    private void closeStream(AudioStream stream) {
+        if (stream == null) {
+            return;
+        }
+        try {
+            stream.close();
+        } catch (IOException e) {
+            logger.logException(e);
+        }
+    }
+
+    /**
+     * Closes the connection if it has been idle for the timeout, otherwise schedules the next check.
+     */
+    private void checkIdle(SelectionKey key) {
+        if (!key.channel().isOpen()) {
+            return;
+        }
+
+        ClientConnection connection = (ClientConnection) key.attachment();
+        long deadline = connection.lastActivity() + idleTimeoutMillis;
+        if (deadline <= now && !connection.commandRunning()) {
+            closeConnection(key);
+        } else {
+            idleTimers.schedule(key, Math.max(deadline, now + idleTimers.tickMillis()));
+        }
+    }
+
+    private void closeConnection(SelectionKey key) {
+        if (!key.channel().isOpen()) {
+            return;
+        }
+
+        ClientConnection connection = (ClientConnection) key.attachment();
+        try {
+            if (connection != null) {
+                connection.close();
+            }
+        } catch (IOException e) {
+            logger.logException(e);
+        }
+        try {
+            key.channel().close();
+        } catch (IOException e) {
+            logger.logException(e);
+        }
+
+        if (connection != null && !connection.commandRunning()) {
+            cmdExec.closeSession(connection.sessionId());
+        }
+        connectionClosed.run();
+    }
+}
@@ -0,0 +1,71 @@
+package bg.sofia.uni.fmi.mjt.spotify.connection;
+
+import bg.sofia.uni.fmi.mjt.spotify.streaming.Frames;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * This class is responsible for converting commands and replies between bytes and text without
+ * intermediate byte arrays: commands are decoded straight from the read buffer and replies are
+ * encoded straight into pooled outbound frames. Like {@link BufferPool} it is confined to one thread.
+ */
+public class TextCodec {
+    private static final int INITIAL_CHARS = 256;
+
+    private final CharsetDecoder decoder;
+    private final CharsetEncoder encoder;
+    private CharBuffer chars;
+
+    public TextCodec() {
+        decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        encoder = StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        chars = CharBuffer.allocate(INITIAL_CHARS);
+    }
+
+    /**
+     * Decodes the remaining bytes of the buffer into a string.
+     */
+    public String decode(ByteBuffer bytes) {
+        if (chars.capacity() < bytes.remaining()) {
+            chars = CharBuffer.allocate(bytes.remaining());
+        }
+        chars.clear();
+        decoder.reset();
+        decoder.decode(bytes, chars, true);
+        decoder.flush(chars);
+        return chars.flip().toString();
+    }
+
+    /**
+     * Encodes the text, without its trailing whitespace, as a frame of the given type into a pooled buffer.
+     * Text which does not fit in a pooled buffer gets a frame of its own.
+     */
+    public ByteBuffer encodeFrame(byte type, String text, BufferPool pool) {
+        int end = text.length();
+        while (end > 0 && Character.isWhitespace(text.charAt(end - 1))) {
+            end--;
+        }
+
+        ByteBuffer frame = pool.acquire();
+        frame.position(Frames.HEADER_SIZE);
+        encoder.reset();
+        CoderResult result = encoder.encode(CharBuffer.wrap(text, 0, end), frame, true);
+        if (result.isOverflow() || encoder.flush(frame).isOverflow()) {
+            pool.release(frame);
+            return Frames.text(type, text);
+        }
+
+        frame.put(0, type).putInt(1, frame.position() - Frames.HEADER_SIZE);
+        return frame.flip();
+    }
+}
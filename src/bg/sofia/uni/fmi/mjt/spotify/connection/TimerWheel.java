@@ -0,0 +1,61 @@
+package bg.sofia.uni.fmi.mjt.spotify.connection;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * This class is responsible for the deadlines of a reactor's connections. It is a hashed timer wheel:
+ * a deadline is put in the slot of its tick, so scheduling is O(1) and advancing the wheel only visits
+ * the slots of the elapsed ticks. Deadlines more than a full turn away stay in their slot until their turn.
+ * Timers are never cancelled: the callback of an expired item decides whether it is still relevant.
+ * <p>
+ * The wheel is not thread-safe, it is driven by the reactor's selector thread.
+ */
+public class TimerWheel<T> {
+
+    private record Timer<T>(T item, long deadline) {}
+
+    private final long tickMillis;
+    private final List<List<Timer<T>>> slots;
+    private long currentTick;
+
+    public TimerWheel(int slotCount, long tickMillis, long nowMillis) {
+        this.tickMillis = tickMillis;
+        this.slots = new ArrayList<>(slotCount);
+        for (int i = 0; i < slotCount; i++) {
+            slots.add(new ArrayList<>());
+        }
+        this.currentTick = nowMillis / tickMillis;
+    }
+
+    public void schedule(T item, long deadlineMillis) {
+        long tick = Math.max(deadlineMillis / tickMillis, currentTick + 1);
+        slots.get((int) (tick % slots.size())).add(new Timer<>(item, deadlineMillis));
+    }
+
+    /**
+     * Passes every item whose deadline has been reached to the callback.
+     */
+    public void advance(long nowMillis, Consumer<T> expired) {
+        long targetTick = nowMillis / tickMillis;
+        long lastTick = Math.min(targetTick, currentTick + slots.size());
+        for (long tick = currentTick + 1; tick <= lastTick; tick++) {
+            List<Timer<T>> slot = slots.get((int) (tick % slots.size()));
+            if (slot.isEmpty()) {
+                continue;
+            }
+
+            List<Timer<T>> due = new ArrayList<>();
+            slot.removeIf(timer -> timer.deadline() <= nowMillis && due.add(timer));
+            for (Timer<T> timer : due) {
+                expired.accept(timer.item());
+            }
+        }
+        currentTick = Math.max(currentTick, targetTick);
+    }
+
+    public long tickMillis() {
+        return tickMillis;
+    }
+}
@@ -1,27 +1,22 @@
 package bg.sofia.uni.fmi.mjt.spotify.exceptions;
 
-import java.io.FileWriter;
-import java.io.IOException;
-import java.io.PrintWriter;
-import java.text.SimpleDateFormat;
-import java.util.Date;
-
 /**
  * This class is responsible for logging exceptions in a text file.
+ * Logging never touches the file on the caller's thread: the exception is handed over to a {@link LogWriter},
+ * by default the one of "logger.txt" shared by the whole process.
  */
 public class ExceptionLogger {
+    private final LogWriter writer;
+
+    public ExceptionLogger() {
+        this(LogWriter.shared());
+    }
+
+    public ExceptionLogger(LogWriter writer) {
+        this.writer = writer;
+    }
 
     public void logException(Exception e) {
-        try (PrintWriter writer = new PrintWriter(new FileWriter("logger.txt", true))) {
-            String timeStamp = new SimpleDateFormat("yyyy.MM.dd/HH:mm:ss").format(new Date());
-            writer.println("------------------------");
-            writer.println(timeStamp);
-            writer.println(" ");
-            writer.println("Exception stacktrace: ");
-            e.printStackTrace(writer);
-            writer.println(" ");
-        } catch (IOException ioException) {
-            throw new RuntimeException("There is a problem with logging an exception", ioException);
-        }
+        writer.log(e);
     }
 }
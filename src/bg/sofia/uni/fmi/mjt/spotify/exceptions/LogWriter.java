@@ -0,0 +1,322 @@
+package bg.sofia.uni.fmi.mjt.spotify.exceptions;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * This class is responsible for writing logged exceptions to a file on a background thread.
+ * Callers only put the exception in a lock-free {@link RingBuffer}; the writer drains it in batches,
+ * formats a whole batch and writes it with a single call to the file channel. An idle writer is parked
+ * until a caller queues the next exception.
+ * <p>
+ * When the file would grow past the maximum size it is rotated: [file] becomes [file].1, [file].1 becomes
+ * [file].2 and so on, keeping a fixed number of old files. An exception with the same type and stack trace
+ * is written at most a given number of times per window, the rest are only counted and reported when
+ * the window ends. When the queue is full the {@link OverflowPolicy} decides whether the caller waits
+ * or the exception is dropped and counted.
+ */
+public class LogWriter implements AutoCloseable {
+    private static final Path DEFAULT_FILE = Path.of("logger.txt");
+    private static final int QUEUE_CAPACITY = Integer.getInteger("spotify.log.queue", 8192);
+    private static final long MAX_FILE_BYTES = Long.getLong("spotify.log.max.bytes", 10L * 1024 * 1024);
+    private static final int MAX_FILES = Integer.getInteger("spotify.log.files", 5);
+    private static final OverflowPolicy OVERFLOW_POLICY =
+            OverflowPolicy.parse(System.getProperty("spotify.log.overflow", "DROP"));
+    private static final int RATE_LIMIT = Integer.getInteger("spotify.log.rate.limit", 10);
+    private static final long RATE_WINDOW_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private static final DateTimeFormatter TIME_FORMAT =
+            DateTimeFormatter.ofPattern("yyyy.MM.dd/HH:mm:ss").withZone(ZoneId.systemDefault());
+    private static final String SEPARATOR = "------------------------";
+    private static final int BATCH_SIZE = 256;
+    private static final int MAX_RATE_LIMITS = 4096;
+    private static final long FULL_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    private static LogWriter shared;
+
+    private record Entry(long timeMillis, Throwable exception) {}
+
+    private static final class RateLimit {
+        private long windowStart;
+        private int logged;
+        private int suppressed;
+    }
+
+    private final Path file;
+    private final long maxFileBytes;
+    private final int maxFiles;
+    private final OverflowPolicy overflowPolicy;
+    private final int rateLimit;
+    private final long rateWindowMillis;
+    private final RingBuffer<Entry> entries;
+    private final LongAdder dropped;
+    private final Map<Long, RateLimit> rateLimits;
+    private final Thread writer;
+    private volatile long written;
+    private volatile boolean waiting;
+    private volatile boolean closed;
+    private FileChannel channel;
+    private long fileSize;
+
+    /**
+     * @param maxFiles the number of rotated files kept besides the current one
+     * @param rateLimit how many times the same exception is written per window
+     */
+    public LogWriter(Path file, int queueCapacity, long maxFileBytes, int maxFiles, OverflowPolicy overflowPolicy,
+                     int rateLimit, long rateWindowMillis) {
+        this.file = file;
+        this.maxFileBytes = maxFileBytes;
+        this.maxFiles = maxFiles;
+        this.overflowPolicy = overflowPolicy;
+        this.rateLimit = rateLimit;
+        this.rateWindowMillis = rateWindowMillis;
+        entries = new RingBuffer<>(queueCapacity);
+        dropped = new LongAdder();
+        rateLimits = new HashMap<>();
+        writer = new Thread(this::writeLoop, "spotify-logger");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * @return the writer of "logger.txt" shared by the whole process, flushed on shutdown
+     */
+    public static synchronized LogWriter shared() {
+        if (shared == null) {
+            shared = new LogWriter(DEFAULT_FILE, QUEUE_CAPACITY, MAX_FILE_BYTES, MAX_FILES, OVERFLOW_POLICY,
+                    RATE_LIMIT, RATE_WINDOW_MILLIS);
+            Runtime.getRuntime().addShutdownHook(new Thread(shared::close, "spotify-logger-shutdown"));
+        }
+        return shared;
+    }
+
+    /**
+     * Queues the exception. Never blocks with the {@link OverflowPolicy#DROP} policy.
+     */
+    public void log(Throwable exception) {
+        Entry entry = new Entry(System.currentTimeMillis(), exception);
+        while (!closed) {
+            if (entries.offer(entry)) {
+                if (waiting) {
+                    LockSupport.unpark(writer);
+                }
+                return;
+            }
+            if (overflowPolicy == OverflowPolicy.DROP) {
+                break;
+            }
+            LockSupport.unpark(writer);
+            LockSupport.parkNanos(FULL_PARK_NANOS);
+        }
+        dropped.increment();
+    }
+
+    /**
+     * Waits until everything queued so far is written.
+     */
+    public void flush() {
+        long target = entries.offered();
+        while (written < target && writer.isAlive()) {
+            LockSupport.unpark(writer);
+            LockSupport.parkNanos(FULL_PARK_NANOS);
+        }
+    }
+
+    /**
+     * Writes everything queued so far and stops the writer. Exceptions logged afterwards are dropped.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeLoop() {
+        StringBuilder batch = new StringBuilder();
+        long consumed = 0;
+        while (true) {
+            boolean closing = closed;
+            Entry entry;
+            int count = 0;
+            while (count < BATCH_SIZE && (entry = entries.poll()) != null) {
+                format(entry, batch);
+                count++;
+            }
+            consumed += count;
+
+            long droppedCount = dropped.sumThenReset();
+            if (droppedCount > 0) {
+                formatNote(System.currentTimeMillis(), "Dropped " + droppedCount
+                        + " exceptions, the log queue was full", batch);
+            }
+
+            write(batch);
+            batch.setLength(0);
+            written = consumed;
+
+            if (count == 0) {
+                if (closing) {
+                    formatSuppressed(batch);
+                    write(batch);
+                    break;
+                }
+                // a caller queueing after the check sees waiting and unparks the writer
+                waiting = true;
+                if (entries.offered() == consumed && !closed) {
+                    LockSupport.park(this);
+                }
+                waiting = false;
+            }
+        }
+
+        try {
+            if (channel != null) {
+                channel.close();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void format(Entry entry, StringBuilder batch) {
+        Throwable exception = entry.exception();
+        long fingerprint = 31L * exception.getClass().getName().hashCode()
+                + Arrays.hashCode(exception.getStackTrace());
+        RateLimit limit = rateLimits.get(fingerprint);
+        if (limit == null) {
+            if (rateLimits.size() >= MAX_RATE_LIMITS) {
+                rateLimits.values().removeIf(l -> entry.timeMillis() - l.windowStart >= rateWindowMillis);
+            }
+            limit = new RateLimit();
+            limit.windowStart = entry.timeMillis();
+            rateLimits.put(fingerprint, limit);
+        } else if (entry.timeMillis() - limit.windowStart >= rateWindowMillis) {
+            if (limit.suppressed > 0) {
+                formatNote(entry.timeMillis(), "Suppressed " + limit.suppressed + " more "
+                        + exception.getClass().getName() + " with the same stack trace", batch);
+            }
+            limit.windowStart = entry.timeMillis();
+            limit.logged = 0;
+            limit.suppressed = 0;
+        }
+
+        if (limit.logged >= rateLimit) {
+            limit.suppressed++;
+            return;
+        }
+        limit.logged++;
+
+        StringWriter stackTrace = new StringWriter();
+        exception.printStackTrace(new PrintWriter(stackTrace));
+        String lineSeparator = System.lineSeparator();
+        batch.append(SEPARATOR).append(lineSeparator)
+                .append(TIME_FORMAT.format(Instant.ofEpochMilli(entry.timeMillis()))).append(lineSeparator)
+                .append(" ").append(lineSeparator)
+                .append("Exception stacktrace: ").append(lineSeparator)
+                .append(stackTrace)
+                .append(" ").append(lineSeparator);
+    }
+
+    private void formatSuppressed(StringBuilder batch) {
+        int suppressed = 0;
+        for (RateLimit limit : rateLimits.values()) {
+            suppressed += limit.suppressed;
+        }
+        if (suppressed > 0) {
+            formatNote(System.currentTimeMillis(), "Suppressed " + suppressed
+                    + " more exceptions with an already logged stack trace", batch);
+        }
+    }
+
+    private void formatNote(long timeMillis, String note, StringBuilder batch) {
+        String lineSeparator = System.lineSeparator();
+        batch.append(SEPARATOR).append(lineSeparator)
+                .append(TIME_FORMAT.format(Instant.ofEpochMilli(timeMillis))).append(lineSeparator)
+                .append(" ").append(lineSeparator)
+                .append(note).append(lineSeparator)
+                .append(" ").append(lineSeparator);
+    }
+
+    private void write(StringBuilder batch) {
+        if (batch.length() == 0) {
+            return;
+        }
+        ByteBuffer bytes = ByteBuffer.wrap(batch.toString().getBytes(StandardCharsets.UTF_8));
+        try {
+            if (channel == null) {
+                open();
+            }
+            if (fileSize > 0 && fileSize + bytes.remaining() > maxFileBytes) {
+                rotate();
+            }
+            while (bytes.hasRemaining()) {
+                fileSize += channel.write(bytes);
+            }
+        } catch (IOException e) {
+            // There is nowhere else to log this, so the batch is lost
+            e.printStackTrace();
+            closeChannel();
+        }
+    }
+
+    private void open() throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        fileSize = channel.size();
+    }
+
+    private void rotate() throws IOException {
+        channel.close();
+        channel = null;
+        if (maxFiles == 0) {
+            Files.delete(file);
+        } else {
+            for (int i = maxFiles - 1; i >= 1; i--) {
+                Path rotated = rotated(i);
+                if (Files.exists(rotated)) {
+                    Files.move(rotated, rotated(i + 1), StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+            Files.move(file, rotated(1), StandardCopyOption.REPLACE_EXISTING);
+        }
+        open();
+    }
+
+    private Path rotated(int index) {
+        return file.resolveSibling(file.getFileName() + "." + index);
+    }
+
+    private void closeChannel() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        channel = null;
+    }
+}
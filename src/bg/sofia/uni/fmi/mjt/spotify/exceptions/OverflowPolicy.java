@@ -0,0 +1,31 @@
+package bg.sofia.uni.fmi.mjt.spotify.exceptions;
+
+import java.util.Locale;
+
+/**
+ * What logging an exception does when the queue of the log writer is full.
+ */
+public enum OverflowPolicy {
+    /**
+     * The exception is dropped and only counted, so the caller never waits.
+     */
+    DROP,
+
+    /**
+     * The caller waits until the writer makes room.
+     */
+    BLOCK;
+
+    /**
+     * Parses the policy ignoring case and surrounding spaces. An unknown policy is reported on stderr
+     * and replaced with {@link #DROP}, so a typo in the configuration doesn't stop the logging.
+     */
+    static OverflowPolicy parse(String policy) {
+        try {
+            return valueOf(policy.strip().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            System.err.println("Unknown log overflow policy " + policy + ", using " + DROP);
+            return DROP;
+        }
+    }
+}
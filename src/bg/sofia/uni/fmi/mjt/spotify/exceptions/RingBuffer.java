@@ -0,0 +1,89 @@
+package bg.sofia.uni.fmi.mjt.spotify.exceptions;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * This class is responsible for a bounded lock-free queue with many producers and a single consumer.
+ * Every slot carries a sequence number telling whether it is free for the producer claiming the position
+ * or filled for the consumer, so producers only contend on a single compare-and-set of the tail
+ * and never wait for each other.
+ */
+public class RingBuffer<T> {
+    private final int mask;
+    private final AtomicReferenceArray<T> items;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail;
+    private long head;
+
+    /**
+     * @param capacity rounded up to a power of two
+     */
+    public RingBuffer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        mask = size - 1;
+        items = new AtomicReferenceArray<>(size);
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        tail = new AtomicLong();
+    }
+
+    /**
+     * Can be called by any thread.
+     *
+     * @return false if the buffer is full
+     */
+    public boolean offer(T item) {
+        while (true) {
+            long position = tail.get();
+            int index = (int) position & mask;
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    items.lazySet(index, item);
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+            } else if (difference < 0) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Must be called only by the consumer thread.
+     *
+     * @return the oldest item or null if the buffer is empty
+     */
+    public T poll() {
+        int index = (int) head & mask;
+        if (sequences.get(index) != head + 1) {
+            return null;
+        }
+        T item = items.get(index);
+        items.lazySet(index, null);
+        sequences.set(index, head + mask + 1);
+        head++;
+        return item;
+    }
+
+    /**
+     * @return the number of items offered successfully so far
+     */
+    public long offered() {
+        return tail.get();
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+}
@@ -0,0 +1,29 @@
+package bg.sofia.uni.fmi.mjt.spotify.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The execution of a single client command, from dispatch until the reply is ready.
+ */
+@Name("bg.sofia.uni.fmi.mjt.spotify.Command")
+@Label("Command")
+@Category({"Spotify", "Commands"})
+@Description("Execution of a client command")
+@StackTrace(false)
+public class CommandEvent extends Event {
+    @Label("Command")
+    private final String command;
+
+    @Label("Session Id")
+    private final long sessionId;
+
+    public CommandEvent(String command, long sessionId) {
+        this.command = command;
+        this.sessionId = sessionId;
+    }
+}
@@ -0,0 +1,46 @@
+package bg.sofia.uni.fmi.mjt.spotify.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A write of persistent state: a group commit of the write-ahead log, a checkpoint, the rewrite
+ * of the users or playlists file or the write of the state snapshot.
+ */
+@Name("bg.sofia.uni.fmi.mjt.spotify.Persistence")
+@Label("Persistence")
+@Category({"Spotify", "Persistence"})
+@Description("Write of persistent server state")
+@StackTrace(false)
+public class PersistenceEvent extends Event {
+    @Label("Operation")
+    private final String operation;
+
+    @Label("File")
+    private final String file;
+
+    @Label("Records")
+    private long records;
+
+    @Label("Bytes")
+    @DataAmount
+    private long bytes;
+
+    public PersistenceEvent(String operation, String file) {
+        this.operation = operation;
+        this.file = file;
+    }
+
+    public void records(long records) {
+        this.records = records;
+    }
+
+    public void bytes(long bytes) {
+        this.bytes = bytes;
+    }
+}
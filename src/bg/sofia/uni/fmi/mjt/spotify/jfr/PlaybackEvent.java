@@ -0,0 +1,56 @@
+package bg.sofia.uni.fmi.mjt.spotify.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The playback of a song by the client, from opening the audio line until it is closed.
+ * Queued songs of the same format are played on the same line, so one event may cover several songs.
+ */
+@Name("bg.sofia.uni.fmi.mjt.spotify.Playback")
+@Label("Playback")
+@Category({"Spotify", "Playback"})
+@Description("Playback of a song by the client")
+@StackTrace(false)
+public class PlaybackEvent extends Event {
+    @Label("Format")
+    private final String format;
+
+    @Label("Bytes")
+    @DataAmount
+    private long bytes;
+
+    @Label("Stopped")
+    private boolean stopped;
+
+    @Label("Underruns")
+    private int underruns;
+
+    @Label("Songs")
+    private int songs;
+
+    public PlaybackEvent(String format) {
+        this.format = format;
+    }
+
+    public void played(long bytes) {
+        this.bytes += bytes;
+    }
+
+    public void stopped(boolean stopped) {
+        this.stopped = stopped;
+    }
+
+    public void underruns(int underruns) {
+        this.underruns = underruns;
+    }
+
+    public void songs(int songs) {
+        this.songs = songs;
+    }
+}
@@ -0,0 +1,41 @@
+package bg.sofia.uni.fmi.mjt.spotify.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A lookup in the song cache. A miss lasts as long as mapping the song file.
+ */
+@Name("bg.sofia.uni.fmi.mjt.spotify.SongCache")
+@Label("Song Cache Lookup")
+@Category({"Spotify", "Streaming"})
+@Description("Lookup of a song in the memory-mapped song cache")
+@StackTrace(false)
+public class SongCacheEvent extends Event {
+    @Label("Song")
+    private final String song;
+
+    @Label("Hit")
+    private boolean hit;
+
+    @Label("Size")
+    @DataAmount
+    private long size;
+
+    public SongCacheEvent(String song) {
+        this.song = song;
+    }
+
+    public void hit(boolean hit) {
+        this.hit = hit;
+    }
+
+    public void size(long size) {
+        this.size = size;
+    }
+}
@@ -0,0 +1,82 @@
+package bg.sofia.uni.fmi.mjt.spotify.jfr;
+
+import bg.sofia.uni.fmi.mjt.spotify.streaming.AudioStream;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import java.io.IOException;
+import java.nio.channels.SocketChannel;
+
+/**
+ * The streaming of a song to a client, from opening the stream until it is closed.
+ */
+@Name("bg.sofia.uni.fmi.mjt.spotify.SongStream")
+@Label("Song Stream")
+@Category({"Spotify", "Streaming"})
+@Description("Streaming of a song to a client")
+@StackTrace(false)
+public class SongStreamEvent extends Event {
+    @Label("Song")
+    private final String song;
+
+    @Label("Session Id")
+    private final long sessionId;
+
+    @Label("Streaming Mode")
+    private final String streamingMode;
+
+    @Label("Bytes")
+    @DataAmount
+    private long bytes;
+
+    @Label("Finished")
+    private boolean finished;
+
+    private SongStreamEvent(String song, long sessionId, String streamingMode) {
+        this.song = song;
+        this.sessionId = sessionId;
+        this.streamingMode = streamingMode;
+    }
+
+    /**
+     * @return the stream, wrapped so that closing it commits the event if the event is being recorded
+     */
+    public static AudioStream record(AudioStream stream, String song, long sessionId, String streamingMode) {
+        SongStreamEvent event = new SongStreamEvent(song, sessionId, streamingMode);
+        if (!event.isEnabled()) {
+            return stream;
+        }
+
+        event.begin();
+        return new AudioStream() {
+            @Override
+            public boolean transfer(SocketChannel channel) throws IOException {
+                return stream.transfer(channel);
+            }
+
+            @Override
+            public boolean isFinished() {
+                return stream.isFinished();
+            }
+
+            @Override
+            public long bytesWritten() {
+                return stream.bytesWritten();
+            }
+
+            @Override
+            public void close() throws IOException {
+                event.bytes = stream.bytesWritten();
+                event.finished = stream.isFinished();
+                event.commit();
+                stream.close();
+            }
+        };
+    }
+}
@@ -0,0 +1,68 @@
+package bg.sofia.uni.fmi.mjt.spotify.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class is responsible for measuring how many heap bytes the request path allocates.
+ * It relies on the per-thread allocation counter of HotSpot and records nothing on JVMs without it.
+ */
+public class AllocationMetrics {
+    private final com.sun.management.ThreadMXBean threads;
+    private final LongAdder commands;
+    private final LongAdder commandBytes;
+    private final LongAdder selectorIterations;
+    private final LongAdder selectorBytes;
+
+    public AllocationMetrics() {
+        java.lang.management.ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        if (threadBean instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) threadBean).isThreadAllocatedMemorySupported()) {
+            threads = (com.sun.management.ThreadMXBean) threadBean;
+            threads.setThreadAllocatedMemoryEnabled(true);
+        } else {
+            threads = null;
+        }
+        commands = new LongAdder();
+        commandBytes = new LongAdder();
+        selectorIterations = new LongAdder();
+        selectorBytes = new LongAdder();
+    }
+
+    /**
+     * @return the bytes allocated so far by the current thread, to be passed back to one of the record methods
+     */
+    public long mark() {
+        return threads == null ? 0 : threads.getCurrentThreadAllocatedBytes();
+    }
+
+    public void recordCommand(long mark) {
+        if (threads != null) {
+            commands.increment();
+            commandBytes.add(threads.getCurrentThreadAllocatedBytes() - mark);
+        }
+    }
+
+    public void recordSelectorIteration(long mark) {
+        if (threads != null) {
+            selectorIterations.increment();
+            selectorBytes.add(threads.getCurrentThreadAllocatedBytes() - mark);
+        }
+    }
+
+    public double bytesPerCommand() {
+        long count = commands.sum();
+        return count == 0 ? 0 : (double) commandBytes.sum() / count;
+    }
+
+    public double bytesPerSelectorIteration() {
+        long count = selectorIterations.sum();
+        return count == 0 ? 0 : (double) selectorBytes.sum() / count;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("allocated bytes per command: %.1f, per selector iteration: %.1f",
+                bytesPerCommand(), bytesPerSelectorIteration());
+    }
+}
@@ -0,0 +1,97 @@
+package bg.sofia.uni.fmi.mjt.spotify.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class is responsible for the distribution of latencies in nanoseconds with a fixed relative error.
+ * Like HdrHistogram, every power of two is split into the same number of linear sub-buckets, so a value
+ * is counted by a shift and an atomic increment, without locks or allocation, and any percentile
+ * is reported within 1/16 of its value. Values above about 36 minutes are counted in the last bucket.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 41;
+    private static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts;
+    private final LongAdder count;
+    private final LongAdder totalNanos;
+    private final AtomicLong maxNanos;
+
+    public LatencyHistogram() {
+        counts = new AtomicLongArray(BUCKETS);
+        count = new LongAdder();
+        totalNanos = new LongAdder();
+        maxNanos = new AtomicLong();
+    }
+
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(index(value));
+        count.increment();
+        totalNanos.add(value);
+        long max = maxNanos.get();
+        while (value > max && !maxNanos.compareAndSet(max, value)) {
+            max = maxNanos.get();
+        }
+    }
+
+    public long count() {
+        return count.sum();
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return the highest value counted in the same bucket as the value at the percentile, 0 if nothing
+     * was recorded
+     */
+    public long percentile(double percentile) {
+        long total = 0;
+        long[] snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(highestValue(i), maxNanos.get());
+            }
+        }
+        return maxNanos.get();
+    }
+
+    public LatencySummary summary() {
+        return new LatencySummary(count.sum(), totalNanos.sum(), percentile(50), percentile(99), maxNanos.get());
+    }
+
+    static int index(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    static long highestValue(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        long lowest = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,13 @@
+package bg.sofia.uni.fmi.mjt.spotify.metrics;
+
+public record LatencySummary(long count, long totalNanos, long p50Nanos, long p99Nanos, long maxNanos) {
+    public double averageNanos() {
+        return count == 0 ? 0 : (double) totalNanos / count;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count %d, p50 %.1f us, p99 %.1f us, max %.1f us",
+                count, p50Nanos / 1e3, p99Nanos / 1e3, maxNanos / 1e3);
+    }
+}
@@ -0,0 +1,226 @@
+package bg.sofia.uni.fmi.mjt.spotify.metrics;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * This class is responsible for the metrics of the hot paths of the server: command latencies, selector loop
+ * time, bytes read and written, open connections and streams, cache hit rates, persistence latencies
+ * and the heap bytes allocated per command and per selector loop iteration (see {@link AllocationMetrics}).
+ * Everything is recorded with lock-free counters and {@link LatencyHistogram}s, so recording is safe
+ * from any thread and cheap enough to stay always on. The metrics are read over JMX
+ * (see {@link ServerMetricsMXBean}) or with the "stats" command.
+ */
+public class ServerMetrics implements ServerMetricsMXBean {
+    private static final String OBJECT_NAME = "bg.sofia.uni.fmi.mjt.spotify:type=ServerMetrics";
+
+    private record Cache(LongSupplier hits, LongSupplier misses) {
+        double hitRate() {
+            long hitCount = hits.getAsLong();
+            long total = hitCount + misses.getAsLong();
+            return total == 0 ? 0 : (double) hitCount / total;
+        }
+    }
+
+    private final Map<String, LatencyHistogram> commandLatencies;
+    private final Map<String, LatencyHistogram> persistenceLatencies;
+    private final Map<String, Cache> caches;
+    private final LatencyHistogram selectorLoop;
+    private final AllocationMetrics allocations;
+    private final LongAdder bytesRead;
+    private final LongAdder bytesWritten;
+    private final LongAdder activeConnections;
+    private final LongAdder activeStreams;
+
+    public ServerMetrics() {
+        commandLatencies = new ConcurrentHashMap<>();
+        persistenceLatencies = new ConcurrentHashMap<>();
+        caches = new ConcurrentHashMap<>();
+        selectorLoop = new LatencyHistogram();
+        allocations = new AllocationMetrics();
+        bytesRead = new LongAdder();
+        bytesWritten = new LongAdder();
+        activeConnections = new LongAdder();
+        activeStreams = new LongAdder();
+    }
+
+    /**
+     * @return the latency histogram of the command with the given verb, created on first use
+     */
+    public LatencyHistogram commandLatency(String verb) {
+        return commandLatencies.computeIfAbsent(verb, v -> new LatencyHistogram());
+    }
+
+    public void registerPersistenceLatency(String name, LatencyHistogram latency) {
+        persistenceLatencies.put(name, latency);
+    }
+
+    public void registerCache(String name, LongSupplier hits, LongSupplier misses) {
+        caches.put(name, new Cache(hits, misses));
+    }
+
+    public LatencyHistogram selectorLoop() {
+        return selectorLoop;
+    }
+
+    public AllocationMetrics allocations() {
+        return allocations;
+    }
+
+    public void bytesRead(long bytes) {
+        bytesRead.add(bytes);
+    }
+
+    public void bytesWritten(long bytes) {
+        bytesWritten.add(bytes);
+    }
+
+    public void connectionOpened() {
+        activeConnections.increment();
+    }
+
+    public void connectionClosed() {
+        activeConnections.decrement();
+    }
+
+    public void streamStarted() {
+        activeStreams.increment();
+    }
+
+    public void streamStopped() {
+        activeStreams.decrement();
+    }
+
+    /**
+     * Registers the metrics with the platform MBean server, replacing the metrics of a previous server.
+     */
+    public void registerMBean() throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(OBJECT_NAME);
+        if (server.isRegistered(name)) {
+            server.unregisterMBean(name);
+        }
+        server.registerMBean(this, name);
+    }
+
+    public void unregisterMBean() throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(OBJECT_NAME);
+        if (server.isRegistered(name)) {
+            server.unregisterMBean(name);
+        }
+    }
+
+    @Override
+    public int getActiveConnections() {
+        return activeConnections.intValue();
+    }
+
+    @Override
+    public int getActiveStreams() {
+        return activeStreams.intValue();
+    }
+
+    @Override
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    @Override
+    public long getBytesWritten() {
+        return bytesWritten.sum();
+    }
+
+    @Override
+    public double getSelectorLoopP50Micros() {
+        return selectorLoop.percentile(50) / 1e3;
+    }
+
+    @Override
+    public double getSelectorLoopP99Micros() {
+        return selectorLoop.percentile(99) / 1e3;
+    }
+
+    @Override
+    public double getAllocatedBytesPerCommand() {
+        return allocations.bytesPerCommand();
+    }
+
+    @Override
+    public double getAllocatedBytesPerSelectorIteration() {
+        return allocations.bytesPerSelectorIteration();
+    }
+
+    @Override
+    public Map<String, Long> getCommandCounts() {
+        return collect(commandLatencies, LatencyHistogram::count);
+    }
+
+    @Override
+    public Map<String, Double> getCommandP50Micros() {
+        return collect(commandLatencies, latency -> latency.percentile(50) / 1e3);
+    }
+
+    @Override
+    public Map<String, Double> getCommandP99Micros() {
+        return collect(commandLatencies, latency -> latency.percentile(99) / 1e3);
+    }
+
+    @Override
+    public Map<String, Double> getPersistenceP99Micros() {
+        return collect(persistenceLatencies, latency -> latency.percentile(99) / 1e3);
+    }
+
+    @Override
+    public Map<String, Double> getCacheHitRates() {
+        return collect(caches, Cache::hitRate);
+    }
+
+    /**
+     * @return a human-readable report of all metrics, leaving out the commands that were never executed
+     */
+    @Override
+    public String getReport() {
+        String lineSeparator = System.lineSeparator();
+        StringBuilder report = new StringBuilder();
+        report.append("connections: ").append(getActiveConnections())
+                .append(", streams: ").append(getActiveStreams())
+                .append(", bytes in: ").append(getBytesRead())
+                .append(", bytes out: ").append(getBytesWritten()).append(lineSeparator);
+        report.append("selector loop: ").append(selectorLoop.summary()).append(lineSeparator);
+        report.append(allocations);
+        for (Map.Entry<String, LatencyHistogram> command : new TreeMap<>(commandLatencies).entrySet()) {
+            if (command.getValue().count() == 0) {
+                continue;
+            }
+            report.append(lineSeparator).append("command ").append(command.getKey()).append(": ")
+                    .append(command.getValue().summary());
+        }
+        for (Map.Entry<String, LatencyHistogram> persistence : new TreeMap<>(persistenceLatencies).entrySet()) {
+            report.append(lineSeparator).append(persistence.getKey()).append(": ")
+                    .append(persistence.getValue().summary());
+        }
+        for (Map.Entry<String, Double> cache : getCacheHitRates().entrySet()) {
+            report.append(lineSeparator).append(cache.getKey())
+                    .append(String.format(" hit rate: %.1f%%", cache.getValue() * 100));
+        }
+        return report.toString();
+    }
+
+    private static <T, R> Map<String, R> collect(Map<String, T> metrics, Function<T, R> value) {
+        Map<String, R> collected = new TreeMap<>();
+        for (Map.Entry<String, T> metric : metrics.entrySet()) {
+            collected.put(metric.getKey(), value.apply(metric.getValue()));
+        }
+        return collected;
+    }
+}
@@ -0,0 +1,36 @@
+package bg.sofia.uni.fmi.mjt.spotify.metrics;
+
+import java.util.Map;
+
+/**
+ * The server metrics as exposed over JMX. Latencies are in microseconds, allocations in heap bytes.
+ */
+public interface ServerMetricsMXBean {
+    int getActiveConnections();
+
+    int getActiveStreams();
+
+    long getBytesRead();
+
+    long getBytesWritten();
+
+    double getSelectorLoopP50Micros();
+
+    double getSelectorLoopP99Micros();
+
+    double getAllocatedBytesPerCommand();
+
+    double getAllocatedBytesPerSelectorIteration();
+
+    Map<String, Long> getCommandCounts();
+
+    Map<String, Double> getCommandP50Micros();
+
+    Map<String, Double> getCommandP99Micros();
+
+    Map<String, Double> getPersistenceP99Micros();
+
+    Map<String, Double> getCacheHitRates();
+
+    String getReport();
+}
@@ -0,0 +1,84 @@
+package bg.sofia.uni.fmi.mjt.spotify.playback;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class is responsible for buffering audio bytes between exactly one writer thread and exactly one
+ * reader thread without locks. Each side only advances its own position and publishes it with an ordered
+ * store, so reads and writes never block each other; callers decide how to wait when the buffer is
+ * empty or full.
+ */
+public class AudioRingBuffer {
+    private final byte[] buffer;
+    private final int mask;
+    private final AtomicLong writePosition;
+    private final AtomicLong readPosition;
+
+    /**
+     * @param capacity in bytes, rounded up to a power of two
+     */
+    public AudioRingBuffer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        buffer = new byte[size];
+        mask = size - 1;
+        writePosition = new AtomicLong();
+        readPosition = new AtomicLong();
+    }
+
+    /**
+     * Must be called only by the writer thread.
+     *
+     * @return the number of bytes written, 0 if the buffer is full
+     */
+    public int write(byte[] source, int offset, int length) {
+        long position = writePosition.get();
+        int count = (int) Math.min(length, buffer.length - (position - readPosition.get()));
+        if (count <= 0) {
+            return 0;
+        }
+
+        int index = (int) position & mask;
+        int first = Math.min(count, buffer.length - index);
+        System.arraycopy(source, offset, buffer, index, first);
+        System.arraycopy(source, offset + first, buffer, 0, count - first);
+        writePosition.lazySet(position + count);
+        return count;
+    }
+
+    /**
+     * Must be called only by the reader thread.
+     *
+     * @return the number of bytes read, 0 if the buffer is empty
+     */
+    public int read(byte[] destination, int offset, int length) {
+        long position = readPosition.get();
+        int count = (int) Math.min(length, writePosition.get() - position);
+        if (count <= 0) {
+            return 0;
+        }
+
+        int index = (int) position & mask;
+        int first = Math.min(count, buffer.length - index);
+        System.arraycopy(buffer, index, destination, offset, first);
+        System.arraycopy(buffer, 0, destination, offset + first, count - first);
+        readPosition.lazySet(position + count);
+        return count;
+    }
+
+    /**
+     * @return the number of bytes that can be read
+     */
+    public int available() {
+        return (int) (writePosition.get() - readPosition.get());
+    }
+
+    public int capacity() {
+        return buffer.length;
+    }
+}
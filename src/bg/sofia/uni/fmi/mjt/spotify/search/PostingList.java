@@ -0,0 +1,61 @@
+package bg.sofia.uni.fmi.mjt.spotify.search;
+
+import java.util.Arrays;
+
+/**
+ * A growable, ascending list of track ids.
+ */
+class PostingList {
+    private static final int INITIAL_CAPACITY = 4;
+
+    private int[] ids;
+    private int size;
+
+    PostingList() {
+        ids = new int[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Track ids are assigned in increasing order, so appending keeps the list sorted.
+     */
+    void add(int id) {
+        if (size > 0 && ids[size - 1] == id) {
+            return;
+        }
+        if (size == ids.length) {
+            ids = Arrays.copyOf(ids, size * 2);
+        }
+        ids[size++] = id;
+    }
+
+    int size() {
+        return size;
+    }
+
+    int get(int index) {
+        return ids[index];
+    }
+
+    int[] toArray() {
+        return Arrays.copyOf(ids, size);
+    }
+
+    static int[] intersect(int[] sorted, PostingList postings) {
+        int[] result = new int[Math.min(sorted.length, postings.size)];
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < sorted.length && j < postings.size) {
+            if (sorted[i] < postings.ids[j]) {
+                i++;
+            } else if (sorted[i] > postings.ids[j]) {
+                j++;
+            } else {
+                result[count++] = sorted[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+}
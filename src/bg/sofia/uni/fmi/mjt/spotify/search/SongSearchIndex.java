@@ -0,0 +1,224 @@
+package bg.sofia.uni.fmi.mjt.spotify.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * This class is responsible for searching songs by substrings of their artist or song name.
+ * Every 1-, 2- and 3-gram of both names is indexed to the ids of the tracks containing it.
+ * Short query words are answered directly by their posting list, longer ones by intersecting
+ * the posting lists of their trigrams and verifying the few remaining candidates.
+ * A track matches if any of the query words matches, tracks matching more words (and words at
+ * the start of a name) rank higher. The best matches are selected with a bounded heap of match positions,
+ * ordered by score and then by the precomputed [artist]-[song] names, so ranking allocates nothing per match.
+ */
+public class SongSearchIndex {
+    private static final int MAX_GRAM = 3;
+    private static final int PREFIX_SCORE = 2;
+    private static final int SUBSTRING_SCORE = 1;
+
+    private final List<String> artists;
+    private final List<String> songNames;
+    private final List<String> names;
+    private final Map<String, Integer> ids;
+    private final Map<String, PostingList> postings;
+    private final ReadWriteLock lock;
+
+    public SongSearchIndex() {
+        artists = new ArrayList<>();
+        songNames = new ArrayList<>();
+        names = new ArrayList<>();
+        ids = new HashMap<>();
+        postings = new HashMap<>();
+        lock = new ReentrantReadWriteLock();
+    }
+
+    public void add(String artist, String songName) {
+        lock.writeLock().lock();
+        try {
+            String name = artist + "-" + songName;
+            if (ids.containsKey(name)) {
+                return;
+            }
+
+            int id = artists.size();
+            artists.add(artist);
+            songNames.add(songName);
+            names.add(name);
+            ids.put(name, id);
+            indexGrams(artist, id);
+            indexGrams(songName, id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return at most limit songs ([artist]-[song]) matching any of the words, best matches first
+     */
+    public List<String> search(List<String> words, int limit) {
+        lock.readLock().lock();
+        try {
+            int[] matchedIds = new int[0];
+            int[] scores = new int[0];
+            for (String word : words) {
+                if (word.isEmpty()) {
+                    continue;
+                }
+                int[] candidates = candidates(word);
+                int[] candidateScores = new int[candidates.length];
+                for (int i = 0; i < candidates.length; i++) {
+                    candidateScores[i] = score(candidates[i], word);
+                }
+                int[][] merged = merge(matchedIds, scores, candidates, candidateScores);
+                matchedIds = merged[0];
+                scores = merged[1];
+            }
+
+            return top(matchedIds, scores, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private int[] candidates(String word) {
+        if (word.length() <= MAX_GRAM) {
+            PostingList list = postings.get(word);
+            return list == null ? new int[0] : list.toArray();
+        }
+
+        PostingList smallest = null;
+        List<PostingList> trigramLists = new ArrayList<>();
+        for (int i = 0; i + MAX_GRAM <= word.length(); i++) {
+            PostingList list = postings.get(word.substring(i, i + MAX_GRAM));
+            if (list == null) {
+                return new int[0];
+            }
+            trigramLists.add(list);
+            if (smallest == null || list.size() < smallest.size()) {
+                smallest = list;
+            }
+        }
+
+        int[] result = smallest.toArray();
+        for (PostingList list : trigramLists) {
+            if (list != smallest) {
+                result = PostingList.intersect(result, list);
+            }
+        }
+
+        int count = 0;
+        for (int id : result) {
+            if (artists.get(id).contains(word) || songNames.get(id).contains(word)) {
+                result[count++] = id;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    private int score(int id, String word) {
+        return artists.get(id).startsWith(word) || songNames.get(id).startsWith(word) ? PREFIX_SCORE : SUBSTRING_SCORE;
+    }
+
+    /**
+     * Keeps the limit best matches in a heap of match positions whose root is the worst of them.
+     */
+    private List<String> top(int[] matchedIds, int[] scores, int limit) {
+        int[] heap = new int[Math.max(0, Math.min(limit, matchedIds.length))];
+        int size = 0;
+        for (int i = 0; i < matchedIds.length && heap.length > 0; i++) {
+            if (size < heap.length) {
+                heap[size] = i;
+                siftUp(heap, size++, matchedIds, scores);
+            } else if (compare(i, heap[0], matchedIds, scores) > 0) {
+                heap[0] = i;
+                siftDown(heap, size, matchedIds, scores);
+            }
+        }
+
+        List<String> result = new ArrayList<>(size);
+        while (size > 0) {
+            result.add(names.get(matchedIds[heap[0]]));
+            heap[0] = heap[--size];
+            siftDown(heap, size, matchedIds, scores);
+        }
+        Collections.reverse(result);
+        return result;
+    }
+
+    private void siftUp(int[] heap, int index, int[] matchedIds, int[] scores) {
+        while (index > 0) {
+            int parent = (index - 1) / 2;
+            if (compare(heap[index], heap[parent], matchedIds, scores) >= 0) {
+                return;
+            }
+            swap(heap, index, parent);
+            index = parent;
+        }
+    }
+
+    private void siftDown(int[] heap, int size, int[] matchedIds, int[] scores) {
+        int index = 0;
+        while (2 * index + 1 < size) {
+            int child = 2 * index + 1;
+            if (child + 1 < size && compare(heap[child + 1], heap[child], matchedIds, scores) < 0) {
+                child++;
+            }
+            if (compare(heap[index], heap[child], matchedIds, scores) <= 0) {
+                return;
+            }
+            swap(heap, index, child);
+            index = child;
+        }
+    }
+
+    /**
+     * @return a negative number if the first match ranks below the second one: it has a lower score
+     * or the same score and a name later in alphabetical order
+     */
+    private int compare(int first, int second, int[] matchedIds, int[] scores) {
+        int byScore = Integer.compare(scores[first], scores[second]);
+        return byScore != 0 ? byScore : names.get(matchedIds[second]).compareTo(names.get(matchedIds[first]));
+    }
+
+    private static void swap(int[] heap, int i, int j) {
+        int swapped = heap[i];
+        heap[i] = heap[j];
+        heap[j] = swapped;
+    }
+
+    private void indexGrams(String text, int id) {
+        for (int length = 1; length <= MAX_GRAM; length++) {
+            for (int i = 0; i + length <= text.length(); i++) {
+                postings.computeIfAbsent(text.substring(i, i + length), gram -> new PostingList()).add(id);
+            }
+        }
+    }
+
+    private static int[][] merge(int[] ids, int[] scores, int[] otherIds, int[] otherScores) {
+        int[] mergedIds = new int[ids.length + otherIds.length];
+        int[] mergedScores = new int[mergedIds.length];
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < ids.length || j < otherIds.length) {
+            if (j == otherIds.length || (i < ids.length && ids[i] < otherIds[j])) {
+                mergedIds[count] = ids[i];
+                mergedScores[count++] = scores[i++];
+            } else if (i == ids.length || ids[i] > otherIds[j]) {
+                mergedIds[count] = otherIds[j];
+                mergedScores[count++] = otherScores[j++];
+            } else {
+                mergedIds[count] = ids[i];
+                mergedScores[count++] = scores[i++] + otherScores[j++];
+            }
+        }
+        return new int[][] {Arrays.copyOf(mergedIds, count), Arrays.copyOf(mergedScores, count)};
+    }
+}
@@ -0,0 +1,58 @@
+package bg.sofia.uni.fmi.mjt.spotify.security;
+
+import bg.sofia.uni.fmi.mjt.spotify.storage.UserRepository;
+
+import java.io.IOException;
+
+/**
+ * This class is responsible for registering and verifying users. Passwords are stored only as
+ * {@link PasswordHasher} hashes. Plaintext or weaker hashes left from older versions are rehashed
+ * on the first successful login. Both operations are expensive by design and block the calling thread,
+ * so they should be run on a pool of their own.
+ */
+public class Authenticator {
+    private final UserRepository users;
+    private final PasswordHasher hasher;
+    private final VerifiedCredentials verified;
+
+    public Authenticator(UserRepository users, PasswordHasher hasher, VerifiedCredentials verified) {
+        this.users = users;
+        this.hasher = hasher;
+        this.verified = verified;
+    }
+
+    /**
+     * @return false if the email is already taken
+     */
+    public boolean register(String email, String password) throws IOException {
+        if (users.password(email) != null) {
+            return false;
+        }
+        return users.register(email, hasher.hash(password));
+    }
+
+    /**
+     * @return true if the password is the user's one
+     */
+    public boolean login(String email, String password) throws IOException {
+        String stored = users.password(email);
+        if (stored == null) {
+            return false;
+        }
+        if (verified.contains(email, password, stored)) {
+            return true;
+        }
+        if (!hasher.verify(password, stored)) {
+            return false;
+        }
+
+        if (hasher.needsRehash(stored)) {
+            String rehashed = hasher.hash(password);
+            if (users.changePassword(email, stored, rehashed)) {
+                stored = rehashed;
+            }
+        }
+        verified.add(email, password, stored);
+        return true;
+    }
+}
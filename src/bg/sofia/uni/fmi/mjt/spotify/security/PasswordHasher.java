@@ -0,0 +1,101 @@
+package bg.sofia.uni.fmi.mjt.spotify.security;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+/**
+ * This class is responsible for hashing passwords with PBKDF2 (HMAC-SHA256) and a random salt per password.
+ * Hashes are stored as pbkdf2-sha256$[iterations]$[salt]$[hash] with Base64 salt and hash, so the iterations
+ * can be raised later without invalidating existing hashes. Passwords stored before hashing was introduced
+ * are still verified, so they can be rehashed on the next successful login.
+ */
+public class PasswordHasher {
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final String PREFIX = "pbkdf2-sha256";
+    private static final String SEPARATOR = "$";
+    private static final int SALT_BYTES = 16;
+    private static final int HASH_BITS = 256;
+
+    private record Hash(int iterations, byte[] salt, byte[] hash) {
+        /**
+         * @return the parts of the stored hash or null if it is malformed
+         */
+        static Hash parse(String stored) {
+            String[] parts = stored.split("\\" + SEPARATOR);
+            if (parts.length != 4) {
+                return null;
+            }
+            try {
+                Base64.Decoder decoder = Base64.getDecoder();
+                Hash hash = new Hash(Integer.parseInt(parts[1]), decoder.decode(parts[2]), decoder.decode(parts[3]));
+                return hash.iterations() > 0 && hash.salt().length > 0 ? hash : null;
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+    }
+
+    private final int iterations;
+    private final SecureRandom random;
+
+    public PasswordHasher(int iterations) {
+        this.iterations = iterations;
+        this.random = new SecureRandom();
+    }
+
+    public String hash(String password) {
+        byte[] salt = new byte[SALT_BYTES];
+        random.nextBytes(salt);
+
+        Base64.Encoder encoder = Base64.getEncoder();
+        return PREFIX + SEPARATOR + iterations + SEPARATOR + encoder.encodeToString(salt)
+                + SEPARATOR + encoder.encodeToString(pbkdf2(password, salt, iterations));
+    }
+
+    /**
+     * Compares the password with the stored hash in time independent of where they differ.
+     * A malformed hash matches no password.
+     */
+    public boolean verify(String password, String stored) {
+        if (!isHashed(stored)) {
+            return MessageDigest.isEqual(password.getBytes(StandardCharsets.UTF_8),
+                    stored.getBytes(StandardCharsets.UTF_8));
+        }
+
+        Hash hash = Hash.parse(stored);
+        return hash != null && MessageDigest.isEqual(hash.hash(), pbkdf2(password, hash.salt(), hash.iterations()));
+    }
+
+    /**
+     * @return true if the stored password is a hash with fewer iterations than configured, a malformed hash
+     * or not a hash at all
+     */
+    public boolean needsRehash(String stored) {
+        if (!isHashed(stored)) {
+            return true;
+        }
+        Hash hash = Hash.parse(stored);
+        return hash == null || hash.iterations() < iterations;
+    }
+
+    private static boolean isHashed(String stored) {
+        return stored.startsWith(PREFIX + SEPARATOR);
+    }
+
+    private static byte[] pbkdf2(String password, byte[] salt, int iterations) {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, HASH_BITS);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("PBKDF2 is not supported by the JDK", e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package bg.sofia.uni.fmi.mjt.spotify.security;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * This class is responsible for remembering recently verified logins, so a user logging in again
+ * with the same password skips the expensive PBKDF2 verification. Only a SHA-256 digest of the password
+ * and the stored hash is kept, entries expire after a fixed time and the least recently used ones
+ * are evicted once the capacity is reached. Changing the stored hash invalidates the entry.
+ * <p>
+ * The cache is thread-safe.
+ */
+public class VerifiedCredentials {
+
+    private record Entry(byte[] digest, long expiresAt) {}
+
+    private final int capacity;
+    private final long timeToLiveMillis;
+    private final LongSupplier clock;
+    private final Map<String, Entry> entries;
+    private final LongAdder hits;
+    private final LongAdder misses;
+
+    public VerifiedCredentials(int capacity, long timeToLiveMillis) {
+        this(capacity, timeToLiveMillis, System::currentTimeMillis);
+    }
+
+    public VerifiedCredentials(int capacity, long timeToLiveMillis, LongSupplier clock) {
+        this.capacity = capacity;
+        this.timeToLiveMillis = timeToLiveMillis;
+        this.clock = clock;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > VerifiedCredentials.this.capacity;
+            }
+        };
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+    }
+
+    /**
+     * @return true if the email was verified with this password and stored hash recently
+     */
+    public boolean contains(String email, String password, String stored) {
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(email);
+        }
+        boolean verified = entry != null && entry.expiresAt() >= clock.getAsLong()
+                && MessageDigest.isEqual(entry.digest(), digest(password, stored));
+        (verified ? hits : misses).increment();
+        return verified;
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    public void add(String email, String password, String stored) {
+        Entry entry = new Entry(digest(password, stored), clock.getAsLong() + timeToLiveMillis);
+        synchronized (entries) {
+            entries.put(email, entry);
+        }
+    }
+
+    private static byte[] digest(String password, String stored) {
+        try {
+            MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+            sha256.update(stored.getBytes(StandardCharsets.UTF_8));
+            sha256.update((byte) 0);
+            return sha256.digest(password.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported by the JDK", e);
+        }
+    }
+}
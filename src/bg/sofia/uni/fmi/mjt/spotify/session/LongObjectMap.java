@@ -0,0 +1,148 @@
+package bg.sofia.uni.fmi.mjt.spotify.session;
+
+import java.util.function.Consumer;
+
+/**
+ * This class is responsible for mapping primitive long keys to values without boxing the keys.
+ * It is an open addressing hash table with linear probing and backward shift deletion,
+ * so lookups and updates don't allocate. The key 0 is reserved for empty slots.
+ * <p>
+ * The map is not thread-safe.
+ */
+public class LongObjectMap<V> {
+    private static final long EMPTY = 0;
+    private static final int INITIAL_CAPACITY = 16;
+    private static final long GOLDEN_RATIO = 0x9E3779B97F4A7C15L;
+
+    private long[] keys;
+    private Object[] values;
+    private int mask;
+    private int size;
+
+    public LongObjectMap() {
+        this.keys = new long[INITIAL_CAPACITY];
+        this.values = new Object[INITIAL_CAPACITY];
+        this.mask = INITIAL_CAPACITY - 1;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        checkKey(key);
+        for (int slot = slot(key); keys[slot] != EMPTY; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                return (V) values[slot];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the previous value of the key or null if there was none
+     */
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value) {
+        checkKey(key);
+        int slot = slot(key);
+        for (; keys[slot] != EMPTY; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                V previous = (V) values[slot];
+                values[slot] = value;
+                return previous;
+            }
+        }
+
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size * 2 > keys.length) {
+            resize();
+        }
+        return null;
+    }
+
+    /**
+     * @return the removed value or null if the key was not present
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        checkKey(key);
+        int slot = slot(key);
+        while (keys[slot] != key) {
+            if (keys[slot] == EMPTY) {
+                return null;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        V removed = (V) values[slot];
+        shiftBack(slot);
+        size--;
+        return removed;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    @SuppressWarnings("unchecked")
+    public void forEachValue(Consumer<V> action) {
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] != EMPTY) {
+                action.accept((V) values[slot]);
+            }
+        }
+    }
+
+    /**
+     * Moves the following entries of the probe sequence back into the freed slot,
+     * so no tombstones are needed.
+     */
+    private void shiftBack(int freed) {
+        int next = freed;
+        while (true) {
+            next = (next + 1) & mask;
+            if (keys[next] == EMPTY) {
+                break;
+            }
+
+            int ideal = slot(keys[next]);
+            boolean stays = freed <= next ? freed < ideal && ideal <= next : freed < ideal || ideal <= next;
+            if (!stays) {
+                keys[freed] = keys[next];
+                values[freed] = values[next];
+                freed = next;
+            }
+        }
+        keys[freed] = EMPTY;
+        values[freed] = null;
+    }
+
+    private void resize() {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new long[oldKeys.length * 2];
+        values = new Object[oldValues.length * 2];
+        mask = keys.length - 1;
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int slot = slot(oldKeys[i]);
+                while (keys[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private int slot(long key) {
+        long hash = key * GOLDEN_RATIO;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    private static void checkKey(long key) {
+        if (key == EMPTY) {
+            throw new IllegalArgumentException("The key 0 is reserved");
+        }
+    }
+}
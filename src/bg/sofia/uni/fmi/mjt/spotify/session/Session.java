@@ -0,0 +1,178 @@
+package bg.sofia.uni.fmi.mjt.spotify.session;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * This class is responsible for the state of a client session: the logged in user, the song it plays,
+ * the songs queued after it and the token it can be resumed with after a reconnect. Commands of one session
+ * are executed one at a time, but the state is also read by the streaming code, so it is kept in volatile
+ * fields and the queue is only accessed under the session's lock.
+ */
+public class Session {
+    private final long id;
+    private final Deque<String> queue;
+    private volatile String user;
+    private volatile String nowPlaying;
+    private volatile String interrupted;
+    private volatile String token;
+    private volatile boolean attached;
+    private volatile long detachedAt;
+
+    Session(long id) {
+        this.id = id;
+        this.attached = true;
+        this.queue = new ArrayDeque<>();
+    }
+
+    public long id() {
+        return id;
+    }
+
+    /**
+     * @return the email of the logged in user or null if nobody is logged in
+     */
+    public String user() {
+        return user;
+    }
+
+    public void user(String user) {
+        this.user = user;
+    }
+
+    /**
+     * @return the song the session plays or null if it doesn't play anything
+     */
+    public String nowPlaying() {
+        return nowPlaying;
+    }
+
+    /**
+     * @return false if the session already plays a song
+     */
+    public synchronized boolean startPlaying(String song) {
+        if (nowPlaying != null) {
+            return false;
+        }
+        nowPlaying = song;
+        return true;
+    }
+
+    /**
+     * @return the song that was playing or null if there was none
+     */
+    public synchronized String stopPlaying() {
+        String song = nowPlaying;
+        nowPlaying = null;
+        return song;
+    }
+
+    /**
+     * Stops the song only if it is still the one playing, so a song that finished streaming
+     * doesn't stop the song started meanwhile by another command.
+     *
+     * @return false if another song (or none) is playing
+     */
+    public synchronized boolean finishPlaying(String song) {
+        if (nowPlaying == null || !nowPlaying.equals(song)) {
+            return false;
+        }
+        nowPlaying = null;
+        return true;
+    }
+
+    /**
+     * Adds songs to the end of the play queue.
+     */
+    public synchronized void enqueue(List<String> songs) {
+        queue.addAll(songs);
+    }
+
+    /**
+     * @return the number of songs waiting in the play queue
+     */
+    public synchronized int queued() {
+        return queue.size();
+    }
+
+    /**
+     * @return the song that plays next or null if the queue is empty
+     */
+    public synchronized String nextQueued() {
+        return queue.peekFirst();
+    }
+
+    /**
+     * Starts playing the next song of the queue, unless a song is already playing.
+     *
+     * @return the started song or null if the queue is empty or a song is playing
+     */
+    public synchronized String playNextQueued() {
+        if (nowPlaying != null || queue.isEmpty()) {
+            return null;
+        }
+        nowPlaying = queue.pollFirst();
+        return nowPlaying;
+    }
+
+    public synchronized void clearQueue() {
+        queue.clear();
+    }
+
+    /**
+     * Stops the song of a session whose connection was closed, remembering it for a resume.
+     *
+     * @return the interrupted song or null if there was none
+     */
+    public synchronized String interruptPlaying() {
+        interrupted = nowPlaying;
+        nowPlaying = null;
+        return interrupted;
+    }
+
+    /**
+     * Takes over the song interrupted by {@link #interruptPlaying} and the play queue of a closed session,
+     * queueing them in this one with the interrupted song first.
+     */
+    public void takeOver(Session closed) {
+        List<String> songs = new ArrayList<>();
+        synchronized (closed) {
+            if (closed.interrupted != null) {
+                songs.add(closed.interrupted);
+                closed.interrupted = null;
+            }
+            songs.addAll(closed.queue);
+            closed.queue.clear();
+        }
+        enqueue(songs);
+    }
+
+    public String token() {
+        return token;
+    }
+
+    void token(String token) {
+        this.token = token;
+    }
+
+    /**
+     * @return false once the connection of the session has been closed
+     */
+    public boolean attached() {
+        return attached;
+    }
+
+    void detached(long nowMillis) {
+        this.attached = false;
+        this.detachedAt = nowMillis;
+    }
+
+    /**
+     * @return when the connection of the session was closed, in milliseconds
+     */
+    public long detachedAt() {
+        return detachedAt;
+    }
+}
@@ -0,0 +1,156 @@
+package bg.sofia.uni.fmi.mjt.spotify.session;
+
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class is responsible for the sessions of the connected clients. Every connection gets a unique
+ * long id, which is the key of its session in segmented {@link LongObjectMap}s, so looking a session up
+ * neither boxes the id nor allocates.
+ * <p>
+ * A session can be given a random token. When its connection is closed, a session with a token stays
+ * resumable, so a client reconnecting with the token gets its login and song back, until it expires.
+ * <p>
+ * The registry is thread-safe. Each segment is guarded by its own monitor.
+ */
+public class SessionRegistry {
+    private static final int SEGMENTS = 64;
+    private static final int TOKEN_BYTES = 18;
+
+    private final LongObjectMap<Session>[] segments;
+    private final Map<String, Session> resumable;
+    private final AtomicLong nextId;
+    private final SecureRandom random;
+
+    @SuppressWarnings("unchecked")
+    public SessionRegistry() {
+        this.segments = (LongObjectMap<Session>[]) new LongObjectMap<?>[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new LongObjectMap<>();
+        }
+        this.resumable = new ConcurrentHashMap<>();
+        this.nextId = new AtomicLong(1);
+        this.random = new SecureRandom();
+    }
+
+    /**
+     * Opens a session for a new connection.
+     *
+     * @return the id of the session
+     */
+    public long open() {
+        long id = nextId.getAndIncrement();
+        attach(id);
+        return id;
+    }
+
+    /**
+     * @return the session with this id, opened if it doesn't exist yet
+     */
+    public Session attach(long id) {
+        LongObjectMap<Session> segment = segment(id);
+        synchronized (segment) {
+            Session session = segment.get(id);
+            if (session == null) {
+                session = new Session(id);
+                segment.put(id, session);
+            }
+            return session;
+        }
+    }
+
+    /**
+     * Looks a session up without opening it, so code that runs after a connection was closed
+     * doesn't bring its session back.
+     *
+     * @return the session with this id or null if it doesn't exist
+     */
+    public Session get(long id) {
+        LongObjectMap<Session> segment = segment(id);
+        synchronized (segment) {
+            return segment.get(id);
+        }
+    }
+
+    /**
+     * Removes the session of a closed connection. It can still be resumed if it has a token.
+     *
+     * @return the removed session or null if there was none
+     */
+    public Session detach(long id) {
+        LongObjectMap<Session> segment = segment(id);
+        Session session;
+        synchronized (segment) {
+            session = segment.remove(id);
+        }
+        if (session != null) {
+            session.detached(System.currentTimeMillis());
+        }
+        return session;
+    }
+
+    /**
+     * Gives the session a new token, revoking its previous one.
+     */
+    public String issueToken(Session session) {
+        byte[] bytes = new byte[TOKEN_BYTES];
+        random.nextBytes(bytes);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+
+        revokeToken(session);
+        session.token(token);
+        resumable.put(token, session);
+        return token;
+    }
+
+    public void revokeToken(Session session) {
+        String token = session.token();
+        if (token != null) {
+            resumable.remove(token, session);
+            session.token(null);
+        }
+    }
+
+    /**
+     * Takes over a detached session by its token. The token is consumed.
+     *
+     * @return the detached session or null if the token is unknown or its session is still connected
+     */
+    public Session resume(String token) {
+        Session session = resumable.get(token);
+        if (session == null || session.attached() || !resumable.remove(token, session)) {
+            return null;
+        }
+        session.token(null);
+        return session;
+    }
+
+    /**
+     * Forgets the detached sessions that have not been resumed for the given time, so memory stays bounded
+     * under connection churn.
+     */
+    public void expireDetached(long timeToLiveMillis) {
+        long expiredBefore = System.currentTimeMillis() - timeToLiveMillis;
+        resumable.values().removeIf(session -> !session.attached() && session.detachedAt() < expiredBefore);
+    }
+
+    /**
+     * @return the number of connected sessions
+     */
+    public int size() {
+        int size = 0;
+        for (LongObjectMap<Session> segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    private LongObjectMap<Session> segment(long id) {
+        return segments[(int) (id & (SEGMENTS - 1))];
+    }
+}
@@ -0,0 +1,199 @@
+package bg.sofia.uni.fmi.mjt.spotify.stats;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * This class is responsible for the play statistics behind the "top" command.
+ * Songs that are currently playing are ranked by a {@link TopSongsTracker}. Every started song is also
+ * counted in a ring of minute buckets, which covers the last hour. When a minute bucket is reused,
+ * its counts are rolled up into a ring of hour buckets, which covers the last day, and hour buckets
+ * older than a day are dropped, so memory stays bounded. All-time totals are kept separately.
+ * <p>
+ * Recording a play is lock-free: buckets are swapped with compare-and-set and counted with LongAdders.
+ * A bucket is only replaced once it is a full ring old, so no play can still be counted into it.
+ */
+public class PlayStatistics {
+    private static final int MINUTES = 60;
+    private static final int HOURS = 24;
+    private static final long MINUTE_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private static final class Bucket {
+        private final long epoch;
+        private final Map<String, LongAdder> counts;
+
+        private Bucket(long epoch) {
+            this.epoch = epoch;
+            this.counts = new ConcurrentHashMap<>();
+        }
+
+        private void add(String song, long count) {
+            counts.computeIfAbsent(song, key -> new LongAdder()).add(count);
+        }
+    }
+
+    private final TopSongsTracker playing;
+    private final AtomicReferenceArray<Bucket> minutes;
+    private final AtomicReferenceArray<Bucket> hours;
+    private final Map<String, LongAdder> totals;
+    private final LongSupplier clock;
+
+    public PlayStatistics(TopSongsTracker playing, Map<String, Long> totals) {
+        this(playing, totals, System::currentTimeMillis);
+    }
+
+    /**
+     * @param totals the all-time totals to start from (song -> plays)
+     * @param clock  the current time in milliseconds
+     */
+    public PlayStatistics(TopSongsTracker playing, Map<String, Long> totals, LongSupplier clock) {
+        this.playing = playing;
+        this.minutes = new AtomicReferenceArray<>(MINUTES);
+        this.hours = new AtomicReferenceArray<>(HOURS);
+        this.totals = new ConcurrentHashMap<>();
+        this.clock = clock;
+
+        for (Map.Entry<String, Long> total : totals.entrySet()) {
+            LongAdder count = new LongAdder();
+            count.add(total.getValue());
+            this.totals.put(total.getKey(), count);
+        }
+    }
+
+    public void started(String song) {
+        playing.increment(song);
+        totals.computeIfAbsent(song, key -> new LongAdder()).increment();
+        minuteBucket(clock.getAsLong() / MINUTE_MILLIS).add(song, 1);
+    }
+
+    public void stopped(String song) {
+        playing.decrement(song);
+    }
+
+    /**
+     * @return the number of connections currently playing the song
+     */
+    public long playing(String song) {
+        return playing.count(song);
+    }
+
+    /**
+     * @return the n most played songs in the window in descending order of their plays
+     */
+    public List<String> top(int n, StatisticsWindow window) {
+        if (window == StatisticsWindow.NOW) {
+            return playing.top(n);
+        }
+        if (window == StatisticsWindow.ALL) {
+            return top(n, totals);
+        }
+
+        long minute = clock.getAsLong() / MINUTE_MILLIS;
+        Map<String, LongAdder> counts = new HashMap<>();
+        long oldestMinute = window == StatisticsWindow.HOUR ? minute - MINUTES + 1 : minute - MINUTES * HOURS + 1;
+        for (int i = 0; i < MINUTES; i++) {
+            merge(counts, minutes.get(i), oldestMinute);
+        }
+        if (window == StatisticsWindow.DAY) {
+            for (int i = 0; i < HOURS; i++) {
+                merge(counts, hours.get(i), oldestMinute / MINUTES);
+            }
+        }
+        return top(n, counts);
+    }
+
+    /**
+     * @return a copy of the all-time totals (song -> plays)
+     */
+    public Map<String, Long> totals() {
+        Map<String, Long> copy = new HashMap<>();
+        for (Map.Entry<String, LongAdder> total : totals.entrySet()) {
+            copy.put(total.getKey(), total.getValue().sum());
+        }
+        return copy;
+    }
+
+    private Bucket minuteBucket(long minute) {
+        int slot = (int) (minute % MINUTES);
+        while (true) {
+            Bucket current = minutes.get(slot);
+            if (current != null && current.epoch >= minute) {
+                return current;
+            }
+
+            Bucket fresh = new Bucket(minute);
+            if (minutes.compareAndSet(slot, current, fresh)) {
+                if (current != null) {
+                    rollUp(current);
+                }
+                return fresh;
+            }
+        }
+    }
+
+    private void rollUp(Bucket minute) {
+        long hour = minute.epoch / MINUTES;
+        int slot = (int) (hour % HOURS);
+        Bucket target;
+        while (true) {
+            Bucket current = hours.get(slot);
+            if (current != null && current.epoch == hour) {
+                target = current;
+                break;
+            }
+            if (current != null && current.epoch > hour) {
+                return;
+            }
+            Bucket fresh = new Bucket(hour);
+            if (hours.compareAndSet(slot, current, fresh)) {
+                target = fresh;
+                break;
+            }
+        }
+
+        for (Map.Entry<String, LongAdder> count : minute.counts.entrySet()) {
+            target.add(count.getKey(), count.getValue().sum());
+        }
+    }
+
+    private static void merge(Map<String, LongAdder> counts, Bucket bucket, long oldestEpoch) {
+        if (bucket == null || bucket.epoch < oldestEpoch) {
+            return;
+        }
+        for (Map.Entry<String, LongAdder> count : bucket.counts.entrySet()) {
+            counts.computeIfAbsent(count.getKey(), key -> new LongAdder()).add(count.getValue().sum());
+        }
+    }
+
+    private static List<String> top(int n, Map<String, LongAdder> counts) {
+        PriorityQueue<Map.Entry<String, Long>> heap = new PriorityQueue<>(Map.Entry.comparingByValue());
+        for (Map.Entry<String, LongAdder> count : counts.entrySet()) {
+            long sum = count.getValue().sum();
+            if (sum == 0 || n <= 0) {
+                continue;
+            }
+            if (heap.size() < n) {
+                heap.add(Map.entry(count.getKey(), sum));
+            } else if (heap.peek().getValue() < sum) {
+                heap.poll();
+                heap.add(Map.entry(count.getKey(), sum));
+            }
+        }
+
+        List<String> top = new ArrayList<>(heap.size());
+        while (!heap.isEmpty()) {
+            top.add(heap.poll().getKey());
+        }
+        Collections.reverse(top);
+        return top;
+    }
+}
@@ -0,0 +1,26 @@
+package bg.sofia.uni.fmi.mjt.spotify.stats;
+
+/**
+ * The time windows over which the "top" command ranks songs.
+ */
+public enum StatisticsWindow {
+    /**
+     * The songs that are currently playing.
+     */
+    NOW,
+
+    /**
+     * The songs started in the last hour.
+     */
+    HOUR,
+
+    /**
+     * The songs started in the last day.
+     */
+    DAY,
+
+    /**
+     * The songs started since the statistics were first recorded.
+     */
+    ALL
+}
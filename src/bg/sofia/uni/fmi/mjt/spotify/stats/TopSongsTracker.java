@@ -0,0 +1,186 @@
+package bg.sofia.uni.fmi.mjt.spotify.stats;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * This class is responsible for the songs ranking of the "top" command.
+ * Songs are kept in count buckets linked in count order, so a play or a stop moves a song to a neighbouring
+ * bucket in O(1) and the top N songs are read from the highest bucket down in O(N).
+ * <p>
+ * With a limited capacity the tracker becomes the Space-Saving heavy-hitters summary: once the capacity is
+ * reached, a new song replaces one of the least counted songs and inherits its count, so memory stays bounded
+ * no matter how many distinct songs are played, while frequent songs are still ranked correctly.
+ * Counts are then overestimated by at most the count of the least counted song.
+ * <p>
+ * The tracker is thread-safe.
+ */
+public class TopSongsTracker {
+
+    private static final class Bucket {
+        private final long count;
+        private final Set<String> songs;
+        private Bucket lower;
+        private Bucket higher;
+
+        private Bucket(long count) {
+            this.count = count;
+            this.songs = new LinkedHashSet<>();
+        }
+    }
+
+    private final int capacity;
+    private final Map<String, Bucket> buckets;
+    private Bucket lowest;
+    private Bucket highest;
+
+    /**
+     * Creates an exact tracker.
+     */
+    public TopSongsTracker() {
+        this(Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param capacity the maximum number of tracked songs
+     */
+    public TopSongsTracker(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("The capacity should be positive");
+        }
+
+        this.capacity = capacity;
+        this.buckets = new HashMap<>();
+    }
+
+    public synchronized void increment(String song) {
+        Bucket current = buckets.get(song);
+        if (current != null) {
+            move(song, current, above(current, current.count + 1));
+        } else if (buckets.size() < capacity) {
+            add(song, lowest != null && lowest.count == 1 ? lowest : above(null, 1));
+        } else {
+            Bucket min = lowest;
+            String replaced = min.songs.iterator().next();
+            min.songs.remove(replaced);
+            buckets.remove(replaced);
+            add(song, above(min, min.count + 1));
+            unlinkIfEmpty(min);
+        }
+    }
+
+    public synchronized void decrement(String song) {
+        Bucket current = buckets.get(song);
+        if (current == null) {
+            return;
+        }
+
+        if (current.count == 1) {
+            current.songs.remove(song);
+            buckets.remove(song);
+            unlinkIfEmpty(current);
+        } else {
+            move(song, current, below(current, current.count - 1));
+        }
+    }
+
+    public synchronized long count(String song) {
+        Bucket current = buckets.get(song);
+        return current == null ? 0 : current.count;
+    }
+
+    public synchronized boolean isEmpty() {
+        return buckets.isEmpty();
+    }
+
+    /**
+     * @return the n most counted songs in descending order of their count
+     */
+    public synchronized List<String> top(int n) {
+        List<String> top = new ArrayList<>(Math.min(n, buckets.size()));
+        for (Bucket bucket = highest; bucket != null && top.size() < n; bucket = bucket.lower) {
+            for (String song : bucket.songs) {
+                if (top.size() == n) {
+                    break;
+                }
+                top.add(song);
+            }
+        }
+        return top;
+    }
+
+    private void add(String song, Bucket target) {
+        target.songs.add(song);
+        buckets.put(song, target);
+    }
+
+    private void move(String song, Bucket from, Bucket to) {
+        from.songs.remove(song);
+        add(song, to);
+        unlinkIfEmpty(from);
+    }
+
+    /**
+     * @return the bucket with the given count right above the given bucket (or at the bottom if it is null)
+     */
+    private Bucket above(Bucket bucket, long count) {
+        Bucket next = bucket == null ? lowest : bucket.higher;
+        if (next != null && next.count == count) {
+            return next;
+        }
+
+        Bucket inserted = new Bucket(count);
+        link(bucket, inserted, next);
+        return inserted;
+    }
+
+    /**
+     * @return the bucket with the given count right below the given bucket
+     */
+    private Bucket below(Bucket bucket, long count) {
+        Bucket previous = bucket.lower;
+        if (previous != null && previous.count == count) {
+            return previous;
+        }
+
+        Bucket inserted = new Bucket(count);
+        link(previous, inserted, bucket);
+        return inserted;
+    }
+
+    private void link(Bucket lower, Bucket inserted, Bucket higher) {
+        inserted.lower = lower;
+        inserted.higher = higher;
+        if (lower != null) {
+            lower.higher = inserted;
+        } else {
+            lowest = inserted;
+        }
+        if (higher != null) {
+            higher.lower = inserted;
+        } else {
+            highest = inserted;
+        }
+    }
+
+    private void unlinkIfEmpty(Bucket bucket) {
+        if (!bucket.songs.isEmpty()) {
+            return;
+        }
+
+        if (bucket.lower != null) {
+            bucket.lower.higher = bucket.higher;
+        } else {
+            lowest = bucket.higher;
+        }
+        if (bucket.higher != null) {
+            bucket.higher.lower = bucket.lower;
+        } else {
+            highest = bucket.lower;
+        }
+    }
+}
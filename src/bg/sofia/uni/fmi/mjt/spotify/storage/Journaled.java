@@ -0,0 +1,22 @@
+package bg.sofia.uni.fmi.mjt.spotify.storage;
+
+import java.io.IOException;
+
+/**
+ * A store whose changes are recorded in the {@link WriteAheadLog} and periodically checkpointed
+ * into a snapshot file of its own.
+ */
+public interface Journaled {
+
+    /**
+     * Re-applies a logged change during recovery. Applying the same change twice must have no effect.
+     *
+     * @return false if the record belongs to another store
+     */
+    boolean apply(String record);
+
+    /**
+     * Writes the whole state of the store, so the log entries written before the checkpoint can be dropped.
+     */
+    void writeSnapshot() throws IOException;
+}
@@ -0,0 +1,226 @@
+package bg.sofia.uni.fmi.mjt.spotify.storage;
+
+import bg.sofia.uni.fmi.mjt.spotify.jfr.PersistenceEvent;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class is responsible for the playlists. They are loaded once into memory (name -> ordered songs)
+ * and every change is recorded in the {@link WriteAheadLog}, so a command never rescans or rewrites
+ * the playlists file. On a checkpoint the playlists file is rewritten from memory (in its original
+ * [name]::[song];[song]; format). Replaying the log is idempotent, so changes made while the playlists
+ * file is being rewritten are safe to appear both in it and in the new log.
+ * <p>
+ * The repository is thread-safe. Each playlist is guarded by its own song set's monitor, under which its
+ * changes are queued in the log, so they are logged in the order they were applied. The group commit is
+ * awaited after the monitor is released.
+ */
+public class PlaylistRepository implements Journaled {
+    private static final String CREATE = "playlist-create";
+    private static final String ADD = "playlist-add";
+    private static final String SEPARATOR = "\t";
+
+    public enum AddResult {
+        ADDED, NO_SUCH_PLAYLIST, ALREADY_ADDED
+    }
+
+    private final Path playlistsFile;
+    private final WriteAheadLog log;
+    private final Map<String, Set<String>> playlists;
+
+    public PlaylistRepository(Path playlistsFile, WriteAheadLog log) throws IOException {
+        this(playlistsFile, log, new StateSnapshot());
+    }
+
+    /**
+     * Restores the playlists from the snapshot if it is up to date with the playlists file
+     * and imports the file otherwise.
+     */
+    public PlaylistRepository(Path playlistsFile, WriteAheadLog log, StateSnapshot snapshot) throws IOException {
+        this.playlistsFile = playlistsFile;
+        this.log = log;
+        this.playlists = new ConcurrentHashMap<>();
+
+        Map<String, List<String>> restored = snapshot.playlists(playlistsFile);
+        if (restored != null) {
+            for (Map.Entry<String, List<String>> playlist : restored.entrySet()) {
+                playlists.put(playlist.getKey(), new LinkedHashSet<>(playlist.getValue()));
+            }
+        } else {
+            loadPlaylists();
+        }
+    }
+
+    /**
+     * @return false if a playlist with this name already exists
+     * @throws IllegalArgumentException if the name cannot be stored, see {@link #isValidName}
+     */
+    public boolean create(String name) throws IOException {
+        if (!isValidName(name)) {
+            throw new IllegalArgumentException("Invalid playlist name " + name);
+        }
+
+        Set<String> songs = new LinkedHashSet<>();
+        CompletableFuture<Void> committed;
+        synchronized (songs) {
+            if (playlists.putIfAbsent(name, songs) != null) {
+                return false;
+            }
+            committed = log.append(CREATE + SEPARATOR + name);
+        }
+
+        try {
+            WriteAheadLog.await(committed);
+        } catch (IOException e) {
+            playlists.remove(name, songs);
+            throw e;
+        }
+        return true;
+    }
+
+    public AddResult add(String name, String song) throws IOException {
+        Set<String> songs = playlists.get(name);
+        if (songs == null) {
+            return AddResult.NO_SUCH_PLAYLIST;
+        }
+
+        CompletableFuture<Void> committed;
+        synchronized (songs) {
+            if (!songs.add(song)) {
+                return AddResult.ALREADY_ADDED;
+            }
+            committed = log.append(ADD + SEPARATOR + name + SEPARATOR + song);
+        }
+
+        try {
+            WriteAheadLog.await(committed);
+        } catch (IOException e) {
+            synchronized (songs) {
+                songs.remove(song);
+            }
+            throw e;
+        }
+        return AddResult.ADDED;
+    }
+
+    /**
+     * A name is stored in the log records and in the playlists file,
+     * so it cannot contain their separators: a tab and "::".
+     */
+    public static boolean isValidName(String name) {
+        return !name.isEmpty() && !name.contains(SEPARATOR) && !name.contains("::");
+    }
+
+    /**
+     * @return a copy of the songs of the playlist in the order they were added or null if it doesn't exist
+     */
+    public List<String> songs(String name) {
+        Set<String> songs = playlists.get(name);
+        if (songs == null) {
+            return null;
+        }
+        synchronized (songs) {
+            return new ArrayList<>(songs);
+        }
+    }
+
+    /**
+     * @return a copy of all playlists (name -> songs in the order they were added)
+     */
+    public Map<String, List<String>> snapshot() {
+        Map<String, List<String>> copy = new HashMap<>();
+        for (String name : playlists.keySet()) {
+            copy.put(name, songs(name));
+        }
+        return copy;
+    }
+
+    @Override
+    public boolean apply(String record) {
+        String[] entry = record.split(SEPARATOR);
+        if (entry[0].equals(CREATE) && entry.length == 2) {
+            playlists.putIfAbsent(entry[1], new LinkedHashSet<>());
+            return true;
+        }
+        if (entry[0].equals(ADD) && entry.length == 3) {
+            Set<String> songs = playlists.get(entry[1]);
+            if (songs != null) {
+                songs.add(entry[2]);
+            }
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void writeSnapshot() throws IOException {
+        writePlaylistsFile();
+    }
+
+    private void writePlaylistsFile() throws IOException {
+        PersistenceEvent event = new PersistenceEvent("playlists write", playlistsFile.toString());
+        event.begin();
+        long records = 0;
+        Path tempFile = playlistsFile.resolveSibling(playlistsFile.getFileName() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, Set<String>> playlist : playlists.entrySet()) {
+                writer.write(playlist.getKey());
+                synchronized (playlist.getValue()) {
+                    if (!playlist.getValue().isEmpty()) {
+                        writer.write("::");
+                        for (String song : playlist.getValue()) {
+                            writer.write(song);
+                            writer.write(';');
+                        }
+                    }
+                }
+                writer.newLine();
+                records++;
+            }
+        }
+        event.records(records);
+        event.bytes(Files.size(tempFile));
+        Files.move(tempFile, playlistsFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        event.commit();
+    }
+
+    private void loadPlaylists() throws IOException {
+        if (!Files.exists(playlistsFile)) {
+            return;
+        }
+
+        try (BufferedReader reader = Files.newBufferedReader(playlistsFile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                int separatorIndex = line.indexOf("::");
+                String name = separatorIndex < 0 ? line : line.substring(0, separatorIndex);
+                Set<String> songs = new LinkedHashSet<>();
+                if (separatorIndex >= 0) {
+                    for (String song : line.substring(separatorIndex + 2).split(";")) {
+                        if (!song.isEmpty()) {
+                            songs.add(song);
+                        }
+                    }
+                }
+                playlists.put(name, songs);
+            }
+        }
+    }
+}
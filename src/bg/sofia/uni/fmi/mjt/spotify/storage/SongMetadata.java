@@ -0,0 +1,31 @@
+package bg.sofia.uni.fmi.mjt.spotify.storage;
+
+import bg.sofia.uni.fmi.mjt.spotify.streaming.WavHeader;
+
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * The audio metadata of a catalog song together with the file attributes it was read from.
+ */
+public record SongMetadata(WavHeader header, long lastModified, long fileSize) {
+    private static final long MILLIS_IN_SECOND = 1000;
+
+    public long durationMillis() {
+        long bytesPerSecond = (long) header.blockAlign() * header.sampleRate();
+        return bytesPerSecond == 0 ? 0 : header.dataLength() * MILLIS_IN_SECOND / bytesPerSecond;
+    }
+
+    public String describe(String song) {
+        AudioFormat audioFormat = header.toAudioFormat();
+        return new StringBuilder()
+                .append("Encoding:").append(audioFormat.getEncoding()).append(' ')
+                .append("SampleRate:").append(audioFormat.getSampleRate()).append(' ')
+                .append("SampleSizeInBits:").append(audioFormat.getSampleSizeInBits()).append(' ')
+                .append("Channels:").append(audioFormat.getChannels()).append(' ')
+                .append("FrameSize:").append(audioFormat.getFrameSize()).append(' ')
+                .append("FrameRate:").append(audioFormat.getFrameRate()).append(' ')
+                .append("BigEndian:").append(audioFormat.isBigEndian()).append(' ')
+                .append(song)
+                .toString();
+    }
+}
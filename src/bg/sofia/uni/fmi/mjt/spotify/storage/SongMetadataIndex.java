@@ -0,0 +1,137 @@
+package bg.sofia.uni.fmi.mjt.spotify.storage;
+
+import bg.sofia.uni.fmi.mjt.spotify.exceptions.ExceptionLogger;
+import bg.sofia.uni.fmi.mjt.spotify.streaming.WavHeader;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * This class is responsible for the audio metadata of every catalog song.
+ * The index is persisted in a compact binary sidecar file. On startup an entry is reused only if
+ * the .wav file still has the same modification time and size, so only new or changed files are parsed.
+ */
+public class SongMetadataIndex {
+    private static final int MAGIC = 0x534d4958;
+    private static final int VERSION = 1;
+
+    private final Map<String, SongMetadata> metadata;
+    private final Map<String, String> playReplies;
+
+    private SongMetadataIndex(Map<String, SongMetadata> metadata) {
+        this.metadata = metadata;
+        this.playReplies = new HashMap<>();
+        for (Map.Entry<String, SongMetadata> entry : metadata.entrySet()) {
+            playReplies.put(entry.getKey(), entry.getValue().describe(entry.getKey()));
+        }
+    }
+
+    /**
+     * Loads the index for the given songs ([artist]-[song]), reusing the valid entries of the sidecar file
+     * and rewriting it if anything changed. Songs without a readable .wav file are logged and left out.
+     */
+    public static SongMetadataIndex load(Path indexFile, Collection<String> songs, ExceptionLogger logger)
+            throws IOException {
+        Map<String, SongMetadata> stored = Files.exists(indexFile) ? read(indexFile) : Map.of();
+        Map<String, SongMetadata> metadata = new HashMap<>();
+        boolean changed = stored.size() != songs.size();
+
+        for (String song : songs) {
+            Path songFile = Path.of(song + ".wav");
+            if (!Files.exists(songFile)) {
+                changed = true;
+                continue;
+            }
+
+            try {
+                long lastModified = Files.getLastModifiedTime(songFile).toMillis();
+                long fileSize = Files.size(songFile);
+                SongMetadata entry = stored.get(song);
+                if (entry == null || entry.lastModified() != lastModified || entry.fileSize() != fileSize) {
+                    try (FileChannel file = FileChannel.open(songFile, StandardOpenOption.READ)) {
+                        entry = new SongMetadata(WavHeader.parse(file), lastModified, fileSize);
+                    }
+                    changed = true;
+                }
+                entry.header().toAudioFormat();
+                metadata.put(song, entry);
+            } catch (IOException | IllegalStateException e) {
+                logger.logException(new IOException("Unreadable wav file " + songFile, e));
+                changed = true;
+            }
+        }
+
+        if (changed) {
+            write(indexFile, metadata);
+        }
+        return new SongMetadataIndex(metadata);
+    }
+
+    public SongMetadata get(String song) {
+        return metadata.get(song);
+    }
+
+    /**
+     * @return the precomputed reply to "play [song]" or null if the song has no metadata
+     */
+    public String playReply(String song) {
+        return playReplies.get(song);
+    }
+
+    private static Map<String, SongMetadata> read(Path indexFile) {
+        Map<String, SongMetadata> stored = new HashMap<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexFile)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return Map.of();
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String song = in.readUTF();
+                long lastModified = in.readLong();
+                long fileSize = in.readLong();
+                WavHeader header = new WavHeader(in.readUnsignedShort(), in.readUnsignedShort(), in.readInt(),
+                        in.readUnsignedShort(), in.readUnsignedShort(), in.readLong(), in.readLong());
+                stored.put(song, new SongMetadata(header, lastModified, fileSize));
+            }
+        } catch (IOException e) {
+            // A truncated or corrupted sidecar is rebuilt from the .wav files
+            return Map.of();
+        }
+        return stored;
+    }
+
+    private static void write(Path indexFile, Map<String, SongMetadata> metadata) throws IOException {
+        Path tempFile = indexFile.resolveSibling(indexFile.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(metadata.size());
+            for (Map.Entry<String, SongMetadata> entry : metadata.entrySet()) {
+                SongMetadata song = entry.getValue();
+                WavHeader header = song.header();
+                out.writeUTF(entry.getKey());
+                out.writeLong(song.lastModified());
+                out.writeLong(song.fileSize());
+                out.writeShort(header.formatTag());
+                out.writeShort(header.channels());
+                out.writeInt(header.sampleRate());
+                out.writeShort(header.blockAlign());
+                out.writeShort(header.bitsPerSample());
+                out.writeLong(header.dataOffset());
+                out.writeLong(header.dataLength());
+            }
+        }
+        Files.move(tempFile, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
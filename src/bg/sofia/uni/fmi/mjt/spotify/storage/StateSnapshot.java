@@ -0,0 +1,307 @@
+package bg.sofia.uni.fmi.mjt.spotify.storage;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+
+/**
+ * This class is responsible for the binary snapshot of the whole server state: users, catalog,
+ * playlists and play statistics. The snapshot file is memory-mapped on startup, so restoring it
+ * costs a sequential decode instead of parsing the text files.
+ * <p>
+ * The text files stay the import format. Every section derived from a text file stores the modification
+ * time and size the file had when the section was captured, and the section is used only if the file
+ * is unchanged since. Otherwise (e.g. the file was edited manually) the file is imported instead.
+ * <p>
+ * Every section carries a CRC32 of its content. A section that doesn't match it is dropped, so a corrupted
+ * snapshot is never decoded and the affected state is imported from the text files as well.
+ */
+public class StateSnapshot {
+    private static final int MAGIC = 0x53505353;
+    private static final int VERSION = 2;
+    private static final byte USERS = 1;
+    private static final byte CATALOG = 2;
+    private static final byte PLAYLISTS = 3;
+    private static final byte PLAY_STATISTICS = 4;
+    private static final long MISSING = -1;
+
+    private record Section(long lastModified, long size, ByteBuffer content) {}
+
+    private final Map<Byte, Section> sections;
+
+    public StateSnapshot() {
+        this.sections = new HashMap<>();
+    }
+
+    /**
+     * Maps the snapshot file. A missing file, a file written by another version or a corrupted file
+     * results in an empty snapshot, so everything is imported from the text files. A section whose
+     * checksum doesn't match is left out.
+     */
+    public static StateSnapshot read(Path snapshotFile) throws IOException {
+        StateSnapshot snapshot = new StateSnapshot();
+        if (!Files.exists(snapshotFile)) {
+            return snapshot;
+        }
+
+        MappedByteBuffer mapping;
+        try (FileChannel file = FileChannel.open(snapshotFile, StandardOpenOption.READ)) {
+            mapping = file.map(FileChannel.MapMode.READ_ONLY, 0, file.size());
+        }
+
+        try {
+            if (mapping.getInt() != MAGIC || mapping.getInt() != VERSION) {
+                return snapshot;
+            }
+            while (mapping.hasRemaining()) {
+                byte id = mapping.get();
+                long lastModified = mapping.getLong();
+                long size = mapping.getLong();
+                int length = mapping.getInt();
+                int checksum = mapping.getInt();
+                ByteBuffer content = mapping.slice();
+                content.limit(length);
+                mapping.position(mapping.position() + length);
+                if (checksum(content) == checksum) {
+                    snapshot.sections.put(id, new Section(lastModified, size, content));
+                }
+            }
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            snapshot.sections.clear();
+        }
+        return snapshot;
+    }
+
+    /**
+     * @return email -> password or null if the snapshot has no up-to-date copy of the users file
+     */
+    public Map<String, String> users(Path usersFile) throws IOException {
+        ByteBuffer content = content(USERS, usersFile);
+        if (content == null) {
+            return null;
+        }
+
+        int count = content.getInt();
+        Map<String, String> users = new HashMap<>(capacity(count));
+        for (int i = 0; i < count; i++) {
+            users.put(readString(content), readString(content));
+        }
+        return users;
+    }
+
+    /**
+     * @return artist -> songs or null if the snapshot has no up-to-date copy of the songs file
+     */
+    public Map<String, Set<String>> catalog(Path songsFile) throws IOException {
+        ByteBuffer content = content(CATALOG, songsFile);
+        if (content == null) {
+            return null;
+        }
+
+        int count = content.getInt();
+        Map<String, Set<String>> catalog = new HashMap<>(capacity(count));
+        for (int i = 0; i < count; i++) {
+            String artist = readString(content);
+            int songCount = content.getInt();
+            Set<String> songs = new HashSet<>(capacity(songCount));
+            for (int j = 0; j < songCount; j++) {
+                songs.add(readString(content));
+            }
+            catalog.put(artist, songs);
+        }
+        return catalog;
+    }
+
+    /**
+     * @return name -> songs in the order they were added or null if the snapshot has no up-to-date copy
+     * of the playlists file
+     */
+    public Map<String, List<String>> playlists(Path playlistsFile) throws IOException {
+        ByteBuffer content = content(PLAYLISTS, playlistsFile);
+        if (content == null) {
+            return null;
+        }
+
+        int count = content.getInt();
+        Map<String, List<String>> playlists = new HashMap<>(capacity(count));
+        for (int i = 0; i < count; i++) {
+            String name = readString(content);
+            int songCount = content.getInt();
+            List<String> songs = new ArrayList<>(songCount);
+            for (int j = 0; j < songCount; j++) {
+                songs.add(readString(content));
+            }
+            playlists.put(name, songs);
+        }
+        return playlists;
+    }
+
+    /**
+     * @return song -> number of times it was played, empty if the snapshot has no statistics
+     */
+    public Map<String, Long> playStatistics() {
+        Section section = sections.get(PLAY_STATISTICS);
+        if (section == null) {
+            return Map.of();
+        }
+
+        ByteBuffer content = section.content().duplicate();
+        int count = content.getInt();
+        Map<String, Long> statistics = new HashMap<>(capacity(count));
+        for (int i = 0; i < count; i++) {
+            statistics.put(readString(content), content.getLong());
+        }
+        return statistics;
+    }
+
+    /**
+     * Captures the users. The users file is stamped before the users are read, so changes checkpointed
+     * into the file meanwhile invalidate the section instead of being lost.
+     */
+    public StateSnapshot withUsers(Path usersFile, Supplier<Map<String, String>> users) throws IOException {
+        long[] stamp = stamp(usersFile);
+        Map<String, String> content = users.get();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(content.size());
+            for (Map.Entry<String, String> user : content.entrySet()) {
+                writeString(out, user.getKey());
+                writeString(out, user.getValue());
+            }
+        }
+        return with(USERS, stamp, bytes);
+    }
+
+    public StateSnapshot withCatalog(Path songsFile, Supplier<Map<String, Set<String>>> catalog) throws IOException {
+        long[] stamp = stamp(songsFile);
+        Map<String, Set<String>> content = catalog.get();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(content.size());
+            for (Map.Entry<String, Set<String>> artist : content.entrySet()) {
+                writeString(out, artist.getKey());
+                out.writeInt(artist.getValue().size());
+                for (String song : artist.getValue()) {
+                    writeString(out, song);
+                }
+            }
+        }
+        return with(CATALOG, stamp, bytes);
+    }
+
+    public StateSnapshot withPlaylists(Path playlistsFile, Supplier<Map<String, List<String>>> playlists)
+            throws IOException {
+        long[] stamp = stamp(playlistsFile);
+        Map<String, List<String>> content = playlists.get();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(content.size());
+            for (Map.Entry<String, List<String>> playlist : content.entrySet()) {
+                writeString(out, playlist.getKey());
+                out.writeInt(playlist.getValue().size());
+                for (String song : playlist.getValue()) {
+                    writeString(out, song);
+                }
+            }
+        }
+        return with(PLAYLISTS, stamp, bytes);
+    }
+
+    public StateSnapshot withPlayStatistics(Map<String, Long> statistics) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(statistics.size());
+            for (Map.Entry<String, Long> song : statistics.entrySet()) {
+                writeString(out, song.getKey());
+                out.writeLong(song.getValue());
+            }
+        }
+        return with(PLAY_STATISTICS, new long[] {MISSING, MISSING}, bytes);
+    }
+
+    /**
+     * Writes the snapshot to a temporary file and atomically replaces the previous one.
+     */
+    public void write(Path snapshotFile) throws IOException {
+        Path tempFile = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            for (Map.Entry<Byte, Section> section : sections.entrySet()) {
+                ByteBuffer content = section.getValue().content().duplicate();
+                out.writeByte(section.getKey());
+                out.writeLong(section.getValue().lastModified());
+                out.writeLong(section.getValue().size());
+                out.writeInt(content.remaining());
+                out.writeInt(checksum(content));
+                out.write(content.array(), content.arrayOffset() + content.position(), content.remaining());
+            }
+        }
+        Files.move(tempFile, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private StateSnapshot with(byte id, long[] stamp, ByteArrayOutputStream bytes) {
+        sections.put(id, new Section(stamp[0], stamp[1], ByteBuffer.wrap(bytes.toByteArray())));
+        return this;
+    }
+
+    private ByteBuffer content(byte id, Path source) throws IOException {
+        Section section = sections.get(id);
+        if (section == null) {
+            return null;
+        }
+
+        long[] stamp = stamp(source);
+        if (section.lastModified() != stamp[0] || section.size() != stamp[1]) {
+            return null;
+        }
+        return section.content().duplicate();
+    }
+
+    private static long[] stamp(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return new long[] {MISSING, MISSING};
+        }
+        return new long[] {Files.getLastModifiedTime(file).toMillis(), Files.size(file)};
+    }
+
+    private static int checksum(ByteBuffer content) {
+        CRC32 crc = new CRC32();
+        crc.update(content.duplicate());
+        return (int) crc.getValue();
+    }
+
+    private static int capacity(int count) {
+        return (int) (count / 0.75f) + 1;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer content) {
+        byte[] bytes = new byte[content.getInt()];
+        content.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,157 @@
+package bg.sofia.uni.fmi.mjt.spotify.storage;
+
+import bg.sofia.uni.fmi.mjt.spotify.jfr.PersistenceEvent;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class is responsible for the registered users. They are loaded once into memory (email -> stored password)
+ * and every registration or password change is recorded in the {@link WriteAheadLog}. On a checkpoint
+ * the users file is rewritten from memory in its original [email] [password] format. The repository
+ * stores whatever it is given, hashing is left to the caller.
+ */
+public class UserRepository implements Journaled {
+    private static final String REGISTER = "user-register";
+    private static final String CHANGE_PASSWORD = "user-password";
+    private static final String SEPARATOR = "\t";
+
+    private final Path usersFile;
+    private final WriteAheadLog log;
+    private final Map<String, String> users;
+
+    public UserRepository(Path usersFile, WriteAheadLog log) throws IOException {
+        this(usersFile, log, new StateSnapshot());
+    }
+
+    /**
+     * Restores the users from the snapshot if it is up to date with the users file and imports the file otherwise.
+     */
+    public UserRepository(Path usersFile, WriteAheadLog log, StateSnapshot snapshot) throws IOException {
+        this.usersFile = usersFile;
+        this.log = log;
+        this.users = new ConcurrentHashMap<>();
+
+        Map<String, String> restored = snapshot.users(usersFile);
+        if (restored != null) {
+            users.putAll(restored);
+        } else {
+            loadUsers();
+        }
+    }
+
+    /**
+     * @return false if the email is already taken
+     */
+    public boolean register(String email, String password) throws IOException {
+        if (users.putIfAbsent(email, password) != null) {
+            return false;
+        }
+
+        CompletableFuture<Void> committed = log.append(REGISTER + SEPARATOR + email + SEPARATOR + password);
+        try {
+            WriteAheadLog.await(committed);
+        } catch (IOException e) {
+            users.remove(email);
+            throw e;
+        }
+        return true;
+    }
+
+    /**
+     * Replaces the stored password of the user if it is still the expected one.
+     *
+     * @return false if the password was changed meanwhile or the user doesn't exist
+     */
+    public boolean changePassword(String email, String expected, String replacement) throws IOException {
+        if (!users.replace(email, expected, replacement)) {
+            return false;
+        }
+
+        CompletableFuture<Void> committed = log.append(CHANGE_PASSWORD + SEPARATOR + email + SEPARATOR + replacement);
+        try {
+            WriteAheadLog.await(committed);
+        } catch (IOException e) {
+            users.replace(email, replacement, expected);
+            throw e;
+        }
+        return true;
+    }
+
+    /**
+     * @return the stored password of the user or null if there is no user with this email
+     */
+    public String password(String email) {
+        return users.get(email);
+    }
+
+    /**
+     * @return a copy of all users (email -> password)
+     */
+    public Map<String, String> snapshot() {
+        return new HashMap<>(users);
+    }
+
+    @Override
+    public boolean apply(String record) {
+        String[] entry = record.split(SEPARATOR);
+        if (entry[0].equals(REGISTER)) {
+            if (entry.length == 3) {
+                users.putIfAbsent(entry[1], entry[2]);
+            }
+            return true;
+        }
+        if (entry[0].equals(CHANGE_PASSWORD)) {
+            if (entry.length == 3) {
+                users.put(entry[1], entry[2]);
+            }
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void writeSnapshot() throws IOException {
+        PersistenceEvent event = new PersistenceEvent("users write", usersFile.toString());
+        event.begin();
+        Path tempFile = usersFile.resolveSibling(usersFile.getFileName() + ".tmp");
+        long records = 0;
+        try (BufferedWriter writer = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, String> user : users.entrySet()) {
+                writer.write(user.getKey() + " " + user.getValue());
+                writer.newLine();
+                records++;
+            }
+        }
+        event.records(records);
+        event.bytes(Files.size(tempFile));
+        Files.move(tempFile, usersFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        event.commit();
+    }
+
+    private void loadUsers() throws IOException {
+        if (!Files.exists(usersFile)) {
+            return;
+        }
+
+        try (BufferedReader reader = Files.newBufferedReader(usersFile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int whitespaceIndex = line.indexOf(" ");
+                if (whitespaceIndex < 0) {
+                    continue;
+                }
+                users.put(line.substring(0, whitespaceIndex), line.substring(whitespaceIndex + 1));
+            }
+        }
+    }
+}
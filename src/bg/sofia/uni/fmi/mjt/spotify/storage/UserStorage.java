@@ -1,6 +1,6 @@
 package bg.sofia.uni.fmi.mjt.spotify.storage;
 
-import java.util.Map;
+import bg.sofia.uni.fmi.mjt.spotify.session.SessionRegistry;
 
-public record UserStorage(Map<String, String> registeredUsers,
-                          Map<Integer, String> loggedUsers) {}
+public record UserStorage(UserRepository registeredUsers,
+                          SessionRegistry sessions) {}
@@ -0,0 +1,437 @@
+package bg.sofia.uni.fmi.mjt.spotify.storage;
+
+import bg.sofia.uni.fmi.mjt.spotify.exceptions.ExceptionLogger;
+import bg.sofia.uni.fmi.mjt.spotify.jfr.PersistenceEvent;
+import bg.sofia.uni.fmi.mjt.spotify.metrics.LatencyHistogram;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * This class is responsible for the durability of users and playlists changes.
+ * Changes from all connections are queued and a background thread writes them in groups: every
+ * group-commit interval the queued records are written with a single {@link FileChannel#write}
+ * and, in {@link Durability#FSYNC} mode, a single {@link FileChannel#force}.
+ * Every record is stored as [length][crc32][UTF-8 payload], so a torn write at the end of the log
+ * is detected and dropped on recovery. A group whose write fails is truncated away, so that the groups
+ * written after it don't end up behind a torn record; if even that fails, the log refuses any further writes.
+ * <p>
+ * Once the log grows past a threshold, and on close, it is checkpointed: the log is rotated, every
+ * {@link Journaled} store writes its snapshot and the rotated log is deleted. Checkpoints due to the size
+ * of the log are run by a background thread of their own.
+ */
+public class WriteAheadLog implements Closeable {
+    private static final int RECORD_HEADER_SIZE = 2 * Integer.BYTES;
+    private static final long CHECKPOINT_BYTES = 4L * 1024 * 1024;
+
+    public enum Durability {
+        /**
+         * Every group is forced to disk before the writers are acknowledged.
+         */
+        FSYNC,
+
+        /**
+         * Writers are acknowledged immediately and the groups are left to the OS page cache.
+         */
+        ASYNC
+    }
+
+    private record PendingRecord(byte[] payload, CompletableFuture<Void> committed) {}
+
+    private final Path file;
+    private final Path rotatedFile;
+    private final Durability durability;
+    private final long groupCommitNanos;
+    private final List<Journaled> stores;
+    private final Lock queueLock;
+    private final Condition recordsQueued;
+    private final Lock channelLock;
+    private final Lock checkpointLock;
+    private final Condition checkpointRequested;
+    private final Thread flusher;
+    private final Thread checkpointer;
+    private final ExceptionLogger logger;
+    private final LatencyHistogram flushLatency;
+    private final LatencyHistogram checkpointLatency;
+    private List<PendingRecord> queued;
+    private FileChannel channel;
+    private IOException failure;
+    private boolean checkpointDue;
+    private boolean closed;
+
+    public WriteAheadLog(Path file, Durability durability, long groupCommitMillis) throws IOException {
+        this(file, durability, groupCommitMillis, new ExceptionLogger());
+    }
+
+    public WriteAheadLog(Path file, Durability durability, long groupCommitMillis, ExceptionLogger logger)
+            throws IOException {
+        this.file = file;
+        this.rotatedFile = file.resolveSibling(file.getFileName() + ".old");
+        this.durability = durability;
+        this.groupCommitNanos = TimeUnit.MILLISECONDS.toNanos(groupCommitMillis);
+        this.stores = new ArrayList<>();
+        this.queueLock = new ReentrantLock();
+        this.recordsQueued = queueLock.newCondition();
+        this.checkpointRequested = queueLock.newCondition();
+        this.channelLock = new ReentrantLock();
+        this.checkpointLock = new ReentrantLock();
+        this.queued = new ArrayList<>();
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+
+        this.flushLatency = new LatencyHistogram();
+        this.checkpointLatency = new LatencyHistogram();
+        this.logger = logger;
+
+        this.flusher = new Thread(this::flushLoop, "spotify-wal-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+        this.checkpointer = new Thread(this::checkpointLoop, "spotify-wal-checkpoint");
+        checkpointer.setDaemon(true);
+        checkpointer.start();
+    }
+
+    /**
+     * Replays the records of the log (including a log rotated by an interrupted checkpoint) into the stores,
+     * drops a torn record at the end of the log and registers the stores for checkpoints.
+     */
+    public void recover(Journaled... journaled) throws IOException {
+        stores.addAll(List.of(journaled));
+        Consumer<String> dispatch = record -> {
+            for (Journaled store : stores) {
+                if (store.apply(record)) {
+                    return;
+                }
+            }
+        };
+
+        if (Files.exists(rotatedFile)) {
+            try (FileChannel rotated = FileChannel.open(rotatedFile, StandardOpenOption.READ)) {
+                replay(rotated, dispatch);
+            }
+        }
+        channelLock.lock();
+        try {
+            long validLength = replay(channel, dispatch);
+            channel.truncate(validLength);
+            channel.position(validLength);
+        } finally {
+            channelLock.unlock();
+        }
+    }
+
+    /**
+     * Queues a record for the next group commit.
+     *
+     * @return a future completed once the record is durable according to the configured durability
+     */
+    public CompletableFuture<Void> append(String record) {
+        PendingRecord pending = new PendingRecord(record.getBytes(StandardCharsets.UTF_8), new CompletableFuture<>());
+        queueLock.lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("The write-ahead log is closed");
+            }
+            queued.add(pending);
+            recordsQueued.signal();
+        } finally {
+            queueLock.unlock();
+        }
+
+        return durability == Durability.FSYNC ? pending.committed() : CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * Waits for a future returned by {@link #append}, rethrowing a failed write as an IOException.
+     */
+    public static void await(CompletableFuture<Void> committed) throws IOException {
+        try {
+            committed.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Rotates the log, lets every store write its snapshot and deletes the rotated log.
+     * Does nothing if another checkpoint is already running.
+     */
+    public void checkpoint() throws IOException {
+        if (!checkpointLock.tryLock()) {
+            return;
+        }
+        try {
+            PersistenceEvent event = new PersistenceEvent("wal checkpoint", file.toString());
+            event.begin();
+            long start = System.nanoTime();
+            rotate();
+            for (Journaled store : stores) {
+                store.writeSnapshot();
+            }
+            event.bytes(Files.exists(rotatedFile) ? Files.size(rotatedFile) : 0);
+            Files.deleteIfExists(rotatedFile);
+            checkpointLatency.record(System.nanoTime() - start);
+            event.commit();
+        } finally {
+            checkpointLock.unlock();
+        }
+    }
+
+    /**
+     * @return the time it takes to write (and force, in {@link Durability#FSYNC} mode) a group of records
+     */
+    public LatencyHistogram flushLatency() {
+        return flushLatency;
+    }
+
+    public LatencyHistogram checkpointLatency() {
+        return checkpointLatency;
+    }
+
+    @Override
+    public void close() throws IOException {
+        queueLock.lock();
+        try {
+            closed = true;
+            recordsQueued.signal();
+            checkpointRequested.signal();
+        } finally {
+            queueLock.unlock();
+        }
+
+        try {
+            flusher.join();
+            checkpointer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        checkpointLock.lock();
+        try {
+            checkpoint();
+        } finally {
+            checkpointLock.unlock();
+        }
+        channelLock.lock();
+        try {
+            channel.close();
+        } finally {
+            channelLock.unlock();
+        }
+    }
+
+    private void flushLoop() {
+        while (true) {
+            boolean closing;
+            queueLock.lock();
+            try {
+                while (queued.isEmpty() && !closed) {
+                    recordsQueued.awaitUninterruptibly();
+                }
+                if (queued.isEmpty()) {
+                    return;
+                }
+                closing = closed;
+            } finally {
+                queueLock.unlock();
+            }
+
+            // let the writers of the other connections join the group before it is written
+            if (!closing) {
+                LockSupport.parkNanos(groupCommitNanos);
+            }
+
+            List<PendingRecord> group;
+            queueLock.lock();
+            try {
+                group = queued;
+                queued = new ArrayList<>();
+            } finally {
+                queueLock.unlock();
+            }
+            commit(group);
+        }
+    }
+
+    private void checkpointLoop() {
+        while (true) {
+            queueLock.lock();
+            try {
+                while (!checkpointDue && !closed) {
+                    checkpointRequested.awaitUninterruptibly();
+                }
+                if (closed) {
+                    return;
+                }
+                checkpointDue = false;
+            } finally {
+                queueLock.unlock();
+            }
+
+            try {
+                checkpoint();
+            } catch (IOException e) {
+                logger.logException(e);
+            }
+        }
+    }
+
+    private void requestCheckpoint() {
+        queueLock.lock();
+        try {
+            checkpointDue = true;
+            checkpointRequested.signal();
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    private void commit(List<PendingRecord> group) {
+        int size = 0;
+        for (PendingRecord record : group) {
+            size += RECORD_HEADER_SIZE + record.payload().length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        CRC32 crc = new CRC32();
+        for (PendingRecord record : group) {
+            crc.reset();
+            crc.update(record.payload());
+            buffer.putInt(record.payload().length).putInt((int) crc.getValue()).put(record.payload());
+        }
+        buffer.flip();
+
+        boolean full;
+        PersistenceEvent event = new PersistenceEvent("wal flush", file.toString());
+        event.records(group.size());
+        event.bytes(size);
+        channelLock.lock();
+        try {
+            if (failure != null) {
+                throw failure;
+            }
+            event.begin();
+            long start = System.nanoTime();
+            write(buffer);
+            flushLatency.record(System.nanoTime() - start);
+            event.commit();
+            full = channel.size() >= CHECKPOINT_BYTES;
+        } catch (IOException e) {
+            for (PendingRecord record : group) {
+                record.committed().completeExceptionally(e);
+            }
+            return;
+        } finally {
+            channelLock.unlock();
+        }
+
+        for (PendingRecord record : group) {
+            record.committed().complete(null);
+        }
+        if (full) {
+            requestCheckpoint();
+        }
+    }
+
+    /**
+     * Writes a group of records. A failed write is truncated away, so that no later group is appended
+     * behind a torn record; if the truncation fails too, the log is marked as failed.
+     */
+    private void write(ByteBuffer buffer) throws IOException {
+        long position = channel.position();
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            if (durability == Durability.FSYNC) {
+                channel.force(false);
+            }
+        } catch (IOException e) {
+            try {
+                channel.truncate(position);
+                channel.position(position);
+            } catch (IOException truncateFailure) {
+                e.addSuppressed(truncateFailure);
+                failure = e;
+                logger.logException(e);
+            }
+            throw e;
+        }
+    }
+
+    private void rotate() throws IOException {
+        channelLock.lock();
+        try {
+            channel.force(true);
+            channel.close();
+            if (Files.exists(rotatedFile)) {
+                Files.write(rotatedFile, Files.readAllBytes(file), StandardOpenOption.APPEND);
+                Files.delete(file);
+            } else {
+                Files.move(file, rotatedFile, StandardCopyOption.ATOMIC_MOVE);
+            }
+            channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+        } finally {
+            channelLock.unlock();
+        }
+    }
+
+    /**
+     * @return the length of the valid prefix of the log
+     */
+    private static long replay(FileChannel log, Consumer<String> dispatch) throws IOException {
+        long position = 0;
+        long size = log.size();
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        CRC32 crc = new CRC32();
+        while (position + RECORD_HEADER_SIZE <= size) {
+            header.clear();
+            readFully(log, header, position);
+            int length = header.getInt(0);
+            if (length < 0 || position + RECORD_HEADER_SIZE + length > size) {
+                break;
+            }
+
+            ByteBuffer payload = ByteBuffer.allocate(length);
+            readFully(log, payload, position + RECORD_HEADER_SIZE);
+            crc.reset();
+            crc.update(payload.array());
+            if ((int) crc.getValue() != header.getInt(Integer.BYTES)) {
+                break;
+            }
+
+            dispatch.accept(new String(payload.array(), StandardCharsets.UTF_8));
+            position += RECORD_HEADER_SIZE + length;
+        }
+        return position;
+    }
+
+    private static void readFully(FileChannel log, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (log.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of the write-ahead log");
+            }
+        }
+    }
+}
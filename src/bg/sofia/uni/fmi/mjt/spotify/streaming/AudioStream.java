@@ -0,0 +1,28 @@
+package bg.sofia.uni.fmi.mjt.spotify.streaming;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.SocketChannel;
+
+/**
+ * A song being streamed to a single connection as a sequence of audio data frames.
+ */
+public interface AudioStream extends Closeable {
+
+    /**
+     * Writes the next audio data frame, or continues the partially written one, without blocking.
+     *
+     * @return true if the frame was fully written, false if the socket cannot accept more data right now
+     */
+    boolean transfer(SocketChannel channel) throws IOException;
+
+    /**
+     * @return true when every data frame of the song has been written
+     */
+    boolean isFinished();
+
+    /**
+     * @return the number of bytes written to the socket so far, frame headers included
+     */
+    long bytesWritten();
+}
@@ -0,0 +1,23 @@
+package bg.sofia.uni.fmi.mjt.spotify.streaming;
+
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+
+/**
+ * A memory-mapped .wav file whose header has already been parsed.
+ * The mapping is shared by every connection, each one gets its own read-only view of the data chunk.
+ * A mapping is at most 2GB, so the data chunk, which lies within the file, always fits an int position.
+ */
+public record CachedSong(WavHeader header, MappedByteBuffer mapping) {
+
+    public ByteBuffer data() {
+        ByteBuffer data = mapping.asReadOnlyBuffer();
+        data.position(Math.toIntExact(header.dataOffset()));
+        data.limit(Math.toIntExact(header.dataOffset() + header.dataLength()));
+        return data.slice();
+    }
+
+    public long size() {
+        return mapping.capacity();
+    }
+}
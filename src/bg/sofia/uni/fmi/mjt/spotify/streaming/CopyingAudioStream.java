@@ -0,0 +1,64 @@
+package bg.sofia.uni.fmi.mjt.spotify.streaming;
+
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+/**
+ * This class is responsible for streaming a song by copying its PCM frames through a heap buffer.
+ * It works for every format supported by {@link AudioSystem}.
+ */
+public class CopyingAudioStream implements AudioStream {
+    private static final int CHUNK_SIZE = 8192;
+
+    private final AudioInputStream audio;
+    private final byte[] chunk;
+    private final ByteBuffer frame;
+    private boolean finished;
+    private long bytesWritten;
+
+    public CopyingAudioStream(String song) throws IOException, UnsupportedAudioFileException {
+        audio = AudioSystem.getAudioInputStream(new File(song + ".wav"));
+        int frameSize = Math.max(1, audio.getFormat().getFrameSize());
+        chunk = new byte[Math.max(frameSize, CHUNK_SIZE / frameSize * frameSize)];
+        frame = ByteBuffer.allocate(Frames.HEADER_SIZE + chunk.length);
+        frame.limit(0);
+    }
+
+    @Override
+    public boolean transfer(SocketChannel channel) throws IOException {
+        if (!frame.hasRemaining()) {
+            int bytesRead = audio.read(chunk, 0, chunk.length);
+            if (bytesRead <= 0) {
+                finished = true;
+                return true;
+            }
+            frame.clear();
+            frame.put(Frames.AUDIO_DATA).putInt(bytesRead).put(chunk, 0, bytesRead);
+            frame.flip();
+        }
+
+        bytesWritten += channel.write(frame);
+        return !frame.hasRemaining();
+    }
+
+    @Override
+    public boolean isFinished() {
+        return finished;
+    }
+
+    @Override
+    public long bytesWritten() {
+        return bytesWritten;
+    }
+
+    @Override
+    public void close() throws IOException {
+        audio.close();
+    }
+}
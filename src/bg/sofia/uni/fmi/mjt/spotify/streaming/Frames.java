@@ -0,0 +1,52 @@
+package bg.sofia.uni.fmi.mjt.spotify.streaming;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * This class is responsible for the wire format between the server and the client.
+ * Every message is sent as a frame: [type (1 byte)][payload length (4 bytes)][payload].
+ * Command replies and audio frames are multiplexed over the same connection.
+ * A song started by a command begins with an AUDIO_HEADER frame, while the next song of the play queue,
+ * which follows the previous one's AUDIO_END without any command, begins with an AUDIO_NEXT frame.
+ */
+public final class Frames {
+    public static final byte REPLY = 1;
+    public static final byte AUDIO_HEADER = 2;
+    public static final byte AUDIO_DATA = 3;
+    public static final byte AUDIO_END = 4;
+    public static final byte AUDIO_NEXT = 5;
+
+    public static final int HEADER_SIZE = Byte.BYTES + Integer.BYTES;
+
+    private Frames() {
+    }
+
+    public static ByteBuffer reply(String reply) {
+        return text(REPLY, reply);
+    }
+
+    public static ByteBuffer audioHeader(String header) {
+        return text(AUDIO_HEADER, header);
+    }
+
+    public static ByteBuffer audioNext(String header) {
+        return text(AUDIO_NEXT, header);
+    }
+
+    public static ByteBuffer audioEnd() {
+        ByteBuffer frame = ByteBuffer.allocate(HEADER_SIZE);
+        frame.put(AUDIO_END).putInt(0);
+        return frame.flip();
+    }
+
+    /**
+     * @return a frame of the given type carrying the text without its surrounding whitespace
+     */
+    public static ByteBuffer text(byte type, String text) {
+        byte[] payload = text.strip().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer frame = ByteBuffer.allocate(HEADER_SIZE + payload.length);
+        frame.put(type).putInt(payload.length).put(payload);
+        return frame.flip();
+    }
+}
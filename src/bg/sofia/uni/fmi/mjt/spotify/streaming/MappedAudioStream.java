@@ -0,0 +1,60 @@
+package bg.sofia.uni.fmi.mjt.spotify.streaming;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+/**
+ * This class is responsible for streaming a song from its shared memory mapping.
+ * Each data frame is sent with a single gathering write of the frame header and a slice of the mapping.
+ */
+public class MappedAudioStream implements AudioStream {
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private final ByteBuffer data;
+    private final ByteBuffer[] frame;
+    private final int chunkSize;
+    private long bytesWritten;
+
+    public MappedAudioStream(CachedSong song) {
+        data = song.data();
+        data.limit(0);
+        int blockAlign = Math.max(1, song.header().blockAlign());
+        chunkSize = Math.max(blockAlign, CHUNK_SIZE / blockAlign * blockAlign);
+        ByteBuffer frameHeader = ByteBuffer.allocate(Frames.HEADER_SIZE);
+        frameHeader.limit(0);
+        frame = new ByteBuffer[] {frameHeader, data};
+    }
+
+    @Override
+    public boolean transfer(SocketChannel channel) throws IOException {
+        ByteBuffer frameHeader = frame[0];
+        if (!frameHeader.hasRemaining() && !data.hasRemaining()) {
+            if (data.limit() == data.capacity()) {
+                return true;
+            }
+            int chunk = Math.min(chunkSize, data.capacity() - data.limit());
+            data.limit(data.limit() + chunk);
+            frameHeader.clear();
+            frameHeader.put(Frames.AUDIO_DATA).putInt(chunk);
+            frameHeader.flip();
+        }
+
+        bytesWritten += channel.write(frame);
+        return !frameHeader.hasRemaining() && !data.hasRemaining();
+    }
+
+    @Override
+    public boolean isFinished() {
+        return data.limit() == data.capacity() && !data.hasRemaining() && !frame[0].hasRemaining();
+    }
+
+    @Override
+    public long bytesWritten() {
+        return bytesWritten;
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,185 @@
+package bg.sofia.uni.fmi.mjt.spotify.streaming;
+
+import bg.sofia.uni.fmi.mjt.spotify.jfr.SongCacheEvent;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.ToIntFunction;
+
+/**
+ * This class is responsible for keeping hot songs memory-mapped, so they are served from the page cache
+ * without opening and parsing the file on every request.
+ * The cache is bounded by the total size of the mapped files. When it is full, the least popular song
+ * (by the number of current listeners) is evicted, ties are broken by least recent use.
+ */
+public class SongCache {
+    private final long maxBytes;
+    private final ToIntFunction<String> popularity;
+    private final LinkedHashMap<String, CachedSong> songs;
+    private final ConcurrentHashMap<String, CompletableFuture<CachedSong>> loading;
+    private long usedBytes;
+    private long hits;
+    private long misses;
+
+    public SongCache(long maxBytes, ToIntFunction<String> popularity) {
+        this.maxBytes = maxBytes;
+        this.popularity = popularity;
+        this.songs = new LinkedHashMap<>(16, 0.75f, true);
+        this.loading = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Returns the mapped song, mapping it on a miss. The file is opened and mapped outside the lock of the cache,
+     * so a slow disk only delays the requests for that song; concurrent misses of the same song share one mapping.
+     *
+     * @return the mapped song or null if the file can't be mapped and has to be streamed from the disk
+     */
+    public CachedSong get(String song) throws IOException {
+        SongCacheEvent event = new SongCacheEvent(song);
+        event.begin();
+        CachedSong cached = lookup(song);
+        if (cached != null) {
+            event.hit(true);
+            event.size(cached.size());
+            event.commit();
+            return cached;
+        }
+
+        CompletableFuture<CachedSong> mapping = new CompletableFuture<>();
+        CompletableFuture<CachedSong> inProgress = loading.putIfAbsent(song, mapping);
+        if (inProgress != null) {
+            cached = await(inProgress);
+        } else {
+            try {
+                cached = map(song);
+                add(song, cached);
+                mapping.complete(cached);
+            } catch (IOException | RuntimeException e) {
+                mapping.completeExceptionally(e);
+                throw e;
+            } finally {
+                loading.remove(song, mapping);
+            }
+        }
+        if (cached != null) {
+            event.size(cached.size());
+        }
+        event.commit();
+        return cached;
+    }
+
+    public synchronized long hits() {
+        return hits;
+    }
+
+    public synchronized long misses() {
+        return misses;
+    }
+
+    private synchronized CachedSong lookup(String song) {
+        CachedSong cached = songs.get(song);
+        if (cached != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return cached;
+    }
+
+    private void add(String song, CachedSong cached) {
+        if (cached == null || cached.size() > maxBytes) {
+            return;
+        }
+        synchronized (this) {
+            songs.put(song, cached);
+            usedBytes += cached.size();
+        }
+        evict(song);
+    }
+
+    /**
+     * Evicts songs until the cache fits. The victim is chosen from a snapshot of the keys, so the popularity
+     * of the songs is looked up outside the lock, and the scan stops at the least recently used song without listeners.
+     */
+    private void evict(String justAdded) {
+        while (true) {
+            List<String> candidates;
+            synchronized (this) {
+                if (usedBytes <= maxBytes) {
+                    return;
+                }
+                candidates = new ArrayList<>(songs.keySet());
+            }
+
+            String victim = leastPopular(candidates, justAdded);
+            if (victim == null) {
+                return;
+            }
+            synchronized (this) {
+                CachedSong removed = songs.remove(victim);
+                if (removed != null) {
+                    usedBytes -= removed.size();
+                }
+            }
+        }
+    }
+
+    private String leastPopular(List<String> candidates, String justAdded) {
+        String victim = null;
+        int victimPopularity = Integer.MAX_VALUE;
+        for (String candidate : candidates) {
+            if (candidate.equals(justAdded)) {
+                continue;
+            }
+            int candidatePopularity = popularity.applyAsInt(candidate);
+            if (candidatePopularity < victimPopularity) {
+                victim = candidate;
+                victimPopularity = candidatePopularity;
+                if (victimPopularity == 0) {
+                    break;
+                }
+            }
+        }
+        return victim;
+    }
+
+    private static CachedSong await(CompletableFuture<CachedSong> mapping) throws IOException {
+        try {
+            return mapping.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException cause) {
+                throw new IOException(cause.getMessage(), cause);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * @return the mapped song or null if the file is larger than a single mapping can be (2GB)
+     * or the mapping fails because the address space is exhausted
+     */
+    private static CachedSong map(String song) throws IOException {
+        try (FileChannel file = FileChannel.open(Path.of(song + ".wav"), StandardOpenOption.READ)) {
+            WavHeader header = WavHeader.parse(file);
+            long size = file.size();
+            if (size > Integer.MAX_VALUE) {
+                return null;
+            }
+            try {
+                MappedByteBuffer mapping = file.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                return new CachedSong(header, mapping);
+            } catch (IOException e) {
+                return null;
+            }
+        }
+    }
+}
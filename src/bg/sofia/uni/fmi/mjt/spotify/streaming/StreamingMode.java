@@ -0,0 +1,43 @@
+package bg.sofia.uni.fmi.mjt.spotify.streaming;
+
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+import java.io.IOException;
+
+/**
+ * How the server moves the audio bytes of a song to the socket.
+ */
+public enum StreamingMode {
+    /**
+     * Decodes the file through {@code AudioSystem} and copies every chunk through a heap buffer.
+     */
+    COPY {
+        @Override
+        public AudioStream open(String song, SongCache cache) throws IOException, UnsupportedAudioFileException {
+            return new CopyingAudioStream(song);
+        }
+    },
+
+    /**
+     * Sends the data chunk of the .wav file with {@code FileChannel.transferTo} (sendfile).
+     */
+    ZERO_COPY {
+        @Override
+        public AudioStream open(String song, SongCache cache) throws IOException {
+            return new ZeroCopyAudioStream(song);
+        }
+    },
+
+    /**
+     * Serves the song from the shared memory-mapped song cache, or as {@link #ZERO_COPY} if it can't be mapped.
+     */
+    MAPPED {
+        @Override
+        public AudioStream open(String song, SongCache cache) throws IOException {
+            CachedSong cached = cache.get(song);
+            return cached != null ? new MappedAudioStream(cached) : new ZeroCopyAudioStream(song);
+        }
+    };
+
+    public abstract AudioStream open(String song, SongCache cache) throws IOException, UnsupportedAudioFileException;
+}
@@ -0,0 +1,100 @@
+package bg.sofia.uni.fmi.mjt.spotify.streaming;
+
+import javax.sound.sampled.AudioFormat;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * The parsed RIFF header of a .wav file: its audio format and where its data chunk is located.
+ */
+public record WavHeader(int formatTag, int channels, int sampleRate, int blockAlign, int bitsPerSample,
+                        long dataOffset, long dataLength) {
+
+    private static final int RIFF = 0x46464952;
+    private static final int WAVE = 0x45564157;
+    private static final int FMT = 0x20746d66;
+    private static final int DATA = 0x61746164;
+    private static final int RIFF_HEADER_SIZE = 12;
+    private static final int CHUNK_HEADER_SIZE = 8;
+    private static final int FMT_MIN_SIZE = 16;
+    private static final int EXTENSIBLE_SUB_FORMAT_OFFSET = 24;
+
+    private static final int WAVE_FORMAT_PCM = 1;
+    private static final int WAVE_FORMAT_IEEE_FLOAT = 3;
+    private static final int WAVE_FORMAT_ALAW = 6;
+    private static final int WAVE_FORMAT_MULAW = 7;
+    private static final int WAVE_FORMAT_EXTENSIBLE = 0xFFFE;
+
+    public static WavHeader parse(FileChannel file) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(RIFF_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(file, buffer, 0);
+        if (buffer.getInt(0) != RIFF || buffer.getInt(2 * Integer.BYTES) != WAVE) {
+            throw new IOException("Not a RIFF/WAVE file");
+        }
+
+        ByteBuffer fmt = null;
+        long position = RIFF_HEADER_SIZE;
+        long fileSize = file.size();
+        ByteBuffer chunkHeader = ByteBuffer.allocate(CHUNK_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        while (position + CHUNK_HEADER_SIZE <= fileSize) {
+            readFully(file, chunkHeader.clear(), position);
+            int chunkId = chunkHeader.getInt(0);
+            long chunkSize = Integer.toUnsignedLong(chunkHeader.getInt(Integer.BYTES));
+            long chunkStart = position + CHUNK_HEADER_SIZE;
+
+            if (chunkId == FMT) {
+                if (chunkSize < FMT_MIN_SIZE || chunkStart + chunkSize > fileSize) {
+                    throw new IOException("Invalid fmt chunk");
+                }
+                fmt = ByteBuffer.allocate((int) chunkSize).order(ByteOrder.LITTLE_ENDIAN);
+                readFully(file, fmt, chunkStart);
+            } else if (chunkId == DATA) {
+                if (fmt == null) {
+                    throw new IOException("The data chunk precedes the fmt chunk");
+                }
+                return fromFmt(fmt, chunkStart, Math.min(chunkSize, fileSize - chunkStart));
+            }
+
+            position = chunkStart + chunkSize + (chunkSize & 1);
+        }
+
+        throw new IOException("Missing data chunk");
+    }
+
+    public AudioFormat toAudioFormat() {
+        AudioFormat.Encoding encoding = switch (formatTag) {
+            case WAVE_FORMAT_PCM -> bitsPerSample <= Byte.SIZE
+                    ? AudioFormat.Encoding.PCM_UNSIGNED : AudioFormat.Encoding.PCM_SIGNED;
+            case WAVE_FORMAT_IEEE_FLOAT -> AudioFormat.Encoding.PCM_FLOAT;
+            case WAVE_FORMAT_ALAW -> AudioFormat.Encoding.ALAW;
+            case WAVE_FORMAT_MULAW -> AudioFormat.Encoding.ULAW;
+            default -> throw new IllegalStateException("Unsupported wav format tag " + formatTag);
+        };
+
+        return new AudioFormat(encoding, sampleRate, bitsPerSample, channels, blockAlign, sampleRate, false);
+    }
+
+    private static WavHeader fromFmt(ByteBuffer fmt, long dataOffset, long dataLength) {
+        int formatTag = Short.toUnsignedInt(fmt.getShort(0));
+        if (formatTag == WAVE_FORMAT_EXTENSIBLE && fmt.capacity() >= EXTENSIBLE_SUB_FORMAT_OFFSET + Short.BYTES) {
+            formatTag = Short.toUnsignedInt(fmt.getShort(EXTENSIBLE_SUB_FORMAT_OFFSET));
+        }
+        int channels = Short.toUnsignedInt(fmt.getShort(2));
+        int sampleRate = fmt.getInt(4);
+        int blockAlign = Short.toUnsignedInt(fmt.getShort(12));
+        int bitsPerSample = Short.toUnsignedInt(fmt.getShort(14));
+
+        return new WavHeader(formatTag, channels, sampleRate, blockAlign, bitsPerSample, dataOffset, dataLength);
+    }
+
+    private static void readFully(FileChannel file, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (file.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of wav file");
+            }
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package bg.sofia.uni.fmi.mjt.spotify.streaming;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * This class is responsible for streaming the data chunk of a .wav file straight from the file
+ * to the socket with {@link FileChannel#transferTo}, so the audio bytes never enter user space.
+ * Only the 5-byte frame headers are written from a heap buffer.
+ */
+public class ZeroCopyAudioStream implements AudioStream {
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private final FileChannel file;
+    private final ByteBuffer frameHeader;
+    private final int chunkSize;
+    private final long end;
+    private long position;
+    private long chunkRemaining;
+    private long bytesWritten;
+
+    public ZeroCopyAudioStream(String song) throws IOException {
+        file = FileChannel.open(Path.of(song + ".wav"), StandardOpenOption.READ);
+        try {
+            WavHeader header = WavHeader.parse(file);
+            int blockAlign = Math.max(1, header.blockAlign());
+            chunkSize = Math.max(blockAlign, CHUNK_SIZE / blockAlign * blockAlign);
+            position = header.dataOffset();
+            end = header.dataOffset() + header.dataLength();
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+        frameHeader = ByteBuffer.allocate(Frames.HEADER_SIZE);
+        frameHeader.limit(0);
+    }
+
+    @Override
+    public boolean transfer(SocketChannel channel) throws IOException {
+        if (chunkRemaining == 0 && !frameHeader.hasRemaining()) {
+            if (position >= end) {
+                return true;
+            }
+            chunkRemaining = Math.min(chunkSize, end - position);
+            frameHeader.clear();
+            frameHeader.put(Frames.AUDIO_DATA).putInt((int) chunkRemaining);
+            frameHeader.flip();
+        }
+
+        if (frameHeader.hasRemaining()) {
+            bytesWritten += channel.write(frameHeader);
+            if (frameHeader.hasRemaining()) {
+                return false;
+            }
+        }
+
+        long transferred = file.transferTo(position, chunkRemaining, channel);
+        position += transferred;
+        bytesWritten += transferred;
+        chunkRemaining -= transferred;
+        return chunkRemaining == 0;
+    }
+
+    @Override
+    public boolean isFinished() {
+        return position >= end && chunkRemaining == 0 && !frameHeader.hasRemaining();
+    }
+
+    @Override
+    public long bytesWritten() {
+        return bytesWritten;
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+}
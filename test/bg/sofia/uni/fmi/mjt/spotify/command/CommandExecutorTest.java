@@ -17,8 +17,12 @@ import java.io.File;
 import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 public class CommandExecutorTest {
 
@@ -33,6 +37,8 @@ public class CommandExecutorTest {
 
     @After
     public void deleteTestData() {
+        cmdExec.close();
+
         File playlists = new File("playlists.txt");
         File tempPlaylists = new File("tempPlaylist.txt");
         if (Files.exists(playlists.toPath())) {
@@ -118,6 +124,31 @@ public class CommandExecutorTest {
         assertEquals("Wrong server response for register.", expectedReply, actualReply);
     }
 
+    @Test
+    public void testRegisterConcurrentlyOnlyOneSucceeds() throws InterruptedException {
+        final int threadsCount = 8;
+        String message = "register simoconcurrenttest@gmail.com parola";
+        String expectedReply = "[ User with email simoconcurrenttest@gmail.com successfully registered ]"
+                + System.lineSeparator();
+
+        AtomicInteger successful = new AtomicInteger();
+        Thread[] threads = new Thread[threadsCount];
+        for (int i = 0; i < threadsCount; i++) {
+            int hash = dummyHashCode + i;
+            threads[i] = new Thread(() -> {
+                if (cmdExec.execute(hash, message).equals(expectedReply)) {
+                    successful.incrementAndGet();
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals("Wrong number of successful concurrent registrations.", 1, successful.get());
+    }
+
     @Test
     public void testLoginUnknownCommand() {
         String message = "login simo@gmail.com";
@@ -180,6 +211,19 @@ public class CommandExecutorTest {
         assertEquals("Wrong server response for create-playlist.", expectedReply, actualReply);
     }
 
+    @Test
+    public void testCreatePlaylistInvalidName() {
+        String message = "login simo@gmail.com parola";
+        cmdExec.execute(dummyHashCode, message);
+        message = "create-playlist test\tlist";
+        String actualReply = cmdExec.execute(dummyHashCode, message);
+
+        String expectedReply = "[ Playlist name cannot be empty or contain a tab or \"::\" ]"
+                + System.lineSeparator();
+
+        assertEquals("Wrong server response for create-playlist.", expectedReply, actualReply);
+    }
+
     @Test
     public void testCreatePlaylistSuccessful() {
         String message = "login simo@gmail.com parola";
@@ -359,7 +403,7 @@ public class CommandExecutorTest {
         message = "search le ll";
         String actualReply = cmdExec.execute(dummyHashCode, message);
 
-        String expectedReply = "[ [fletcher-bitter, adele-hello] ]" + System.lineSeparator();
+        String expectedReply = "[ [adele-hello, fletcher-bitter] ]" + System.lineSeparator();
 
         assertEquals("Wrong server response for search.", expectedReply, actualReply);
     }
@@ -398,6 +442,34 @@ public class CommandExecutorTest {
         assertEquals("Wrong server response for top songs.", expectedReply, actualReply);
     }
 
+    @Test
+    public void testTopSongsOfLastHour() {
+        String message = "login simo@gmail.com parola";
+        cmdExec.execute(dummyHashCode, message);
+        message = "play adele-hello";
+        cmdExec.execute(dummyHashCode, message);
+        message = "stop";
+        cmdExec.execute(dummyHashCode, message);
+        message = "top 5 hour";
+        String actualReply = cmdExec.execute(dummyHashCode, message);
+
+        String expectedReply = "[ [adele-hello] ]" + System.lineSeparator();
+
+        assertEquals("Wrong server response for top songs of the last hour.", expectedReply, actualReply);
+    }
+
+    @Test
+    public void testTopSongsUnknownWindow() {
+        String message = "login simo@gmail.com parola";
+        cmdExec.execute(dummyHashCode, message);
+        message = "top 5 year";
+        String actualReply = cmdExec.execute(dummyHashCode, message);
+
+        String expectedReply = "[ Unknown command ]" + System.lineSeparator();
+
+        assertEquals("Wrong server response for top songs.", expectedReply, actualReply);
+    }
+
     @Test
     public void testTopSongsSuccessful() {
         String message = "login simo@gmail.com parola";
@@ -513,6 +585,187 @@ public class CommandExecutorTest {
         assertEquals("Wrong server response for stop.", expectedReply, actualReply);
     }
 
+    @Test
+    public void testPlayPlaylistNoSuchPlaylist() {
+        String message = "login simo@gmail.com parola";
+        cmdExec.execute(dummyHashCode, message);
+        message = "play-playlist invalidlist";
+        String actualReply = cmdExec.execute(dummyHashCode, message);
+
+        String expectedReply = "[ There isn't a playlist with name invalidlist ]" + System.lineSeparator();
+
+        assertEquals("Wrong server response for play-playlist.", expectedReply, actualReply);
+    }
+
+    @Test
+    public void testPlayPlaylistSuccessful() {
+        String message = "login simo@gmail.com parola";
+        cmdExec.execute(dummyHashCode, message);
+        message = "play-playlist list1";
+        String actualReply = cmdExec.execute(dummyHashCode, message);
+
+        assertTrue("Wrong server response for play-playlist.",
+                actualReply.startsWith("Encoding:") && actualReply.strip().endsWith(" adele-hello"));
+        assertEquals("Wrong song playing.", "adele-hello", cmdExec.getNowPlaying(dummyHashCode));
+        assertEquals("Wrong song queued.", "fletcher-bitter", cmdExec.getNextQueued(dummyHashCode));
+    }
+
+    @Test
+    public void testEnqueueWhilePlaying() {
+        String message = "login simo@gmail.com parola";
+        cmdExec.execute(dummyHashCode, message);
+        message = "play adele-hello";
+        cmdExec.execute(dummyHashCode, message);
+        message = "enqueue fletcher-bitter";
+        String actualReply = cmdExec.execute(dummyHashCode, message);
+
+        String expectedReply = "[ Song fletcher-bitter added to the queue ]" + System.lineSeparator();
+
+        assertEquals("Wrong server response for enqueue.", expectedReply, actualReply);
+        assertEquals("Wrong song queued.", "fletcher-bitter", cmdExec.getNextQueued(dummyHashCode));
+    }
+
+    @Test
+    public void testEnqueueNothingPlaying() {
+        String message = "login simo@gmail.com parola";
+        cmdExec.execute(dummyHashCode, message);
+        message = "enqueue fletcher-bitter";
+        String actualReply = cmdExec.execute(dummyHashCode, message);
+
+        assertTrue("Wrong server response for enqueue.", actualReply.startsWith("Encoding:"));
+        assertEquals("Wrong song playing.", "fletcher-bitter", cmdExec.getNowPlaying(dummyHashCode));
+    }
+
+    @Test
+    public void testSkipNothingPlaying() {
+        String message = "login simo@gmail.com parola";
+        cmdExec.execute(dummyHashCode, message);
+        message = "skip";
+        String actualReply = cmdExec.execute(dummyHashCode, message);
+
+        String expectedReply = "[ No song is currently playing ]" + System.lineSeparator();
+
+        assertEquals("Wrong server response for skip.", expectedReply, actualReply);
+    }
+
+    @Test
+    public void testSkipToNextQueued() {
+        String message = "login simo@gmail.com parola";
+        cmdExec.execute(dummyHashCode, message);
+        message = "play-playlist list1";
+        cmdExec.execute(dummyHashCode, message);
+        message = "skip";
+        String actualReply = cmdExec.execute(dummyHashCode, message);
+
+        assertTrue("Wrong server response for skip.",
+                actualReply.startsWith("Encoding:") && actualReply.strip().endsWith(" fletcher-bitter"));
+
+        actualReply = cmdExec.execute(dummyHashCode, message);
+        String expectedReply = "[ Song stopped successfully ]" + System.lineSeparator();
+
+        assertEquals("Wrong server response for skip of the last song.", expectedReply, actualReply);
+        assertNull("Song still playing.", cmdExec.getNowPlaying(dummyHashCode));
+    }
+
+    @Test
+    public void testAdvanceQueue() {
+        String message = "login simo@gmail.com parola";
+        cmdExec.execute(dummyHashCode, message);
+        message = "play-playlist list1";
+        cmdExec.execute(dummyHashCode, message);
+
+        CommandReply reply = cmdExec.advanceQueue(dummyHashCode, "adele-hello");
+
+        assertTrue("Next song not started.", reply != null && reply.text().startsWith("Encoding:"));
+        assertEquals("Wrong started song.", "fletcher-bitter", reply.song());
+        assertEquals("Wrong song playing.", "fletcher-bitter", cmdExec.getNowPlaying(dummyHashCode));
+        assertNull("Stopped song advanced the queue.", cmdExec.advanceQueue(dummyHashCode, "adele-hello"));
+        assertNull("Empty queue started a song.", cmdExec.advanceQueue(dummyHashCode, "fletcher-bitter"));
+        assertNull("Song still playing.", cmdExec.getNowPlaying(dummyHashCode));
+    }
+
+    @Test
+    public void testExecuteCommandPlayback() {
+        cmdExec.execute(dummyHashCode, "login simo@gmail.com parola");
+
+        CommandReply reply = cmdExec.executeCommand(dummyHashCode, "search adele");
+        assertEquals("Wrong playback of search.", CommandReply.Playback.UNCHANGED, reply.playback());
+
+        reply = cmdExec.executeCommand(dummyHashCode, "play adele-hello");
+        assertEquals("Wrong playback of play.", CommandReply.Playback.STARTED, reply.playback());
+        assertEquals("Wrong started song.", "adele-hello", reply.song());
+
+        reply = cmdExec.executeCommand(dummyHashCode, "stop");
+        assertEquals("Wrong playback of stop.", CommandReply.Playback.STOPPED, reply.playback());
+        assertEquals("Wrong reply of stop.", "[ Song stopped successfully ]" + System.lineSeparator(), reply.text());
+    }
+
+    @Test
+    public void testStopClearsQueue() {
+        String message = "login simo@gmail.com parola";
+        cmdExec.execute(dummyHashCode, message);
+        message = "play-playlist list1";
+        cmdExec.execute(dummyHashCode, message);
+        message = "stop";
+        cmdExec.execute(dummyHashCode, message);
+
+        assertNull("Queue not cleared.", cmdExec.getNextQueued(dummyHashCode));
+    }
+
+    @Test
+    public void testResumeAfterReconnect() {
+        String message = "login simo@gmail.com parola";
+        cmdExec.execute(dummyHashCode, message);
+        message = "play adele-hello";
+        cmdExec.execute(dummyHashCode, message);
+        message = "session-token";
+        String tokenReply = cmdExec.execute(dummyHashCode, message).strip();
+        String token = tokenReply.substring("[ Session token: ".length(), tokenReply.length() - " ]".length());
+        cmdExec.closeSession(dummyHashCode);
+
+        long reconnectedId = dummyHashCode + 1;
+        message = "resume " + token;
+        String actualReply = cmdExec.execute(reconnectedId, message);
+
+        assertTrue("Wrong server response for resume.", actualReply.startsWith("Encoding:"));
+        assertEquals("Wrong song after resume.", "adele-hello", cmdExec.getNowPlaying(reconnectedId));
+
+        message = "show-playlist missing";
+        actualReply = cmdExec.execute(reconnectedId, message);
+        String expectedReply = "[ There isn't a playlist with name missing ]" + System.lineSeparator();
+
+        assertEquals("Session not logged in after resume.", expectedReply, actualReply);
+    }
+
+    @Test
+    public void testResumeKeepsQueue() {
+        String message = "login simo@gmail.com parola";
+        cmdExec.execute(dummyHashCode, message);
+        message = "play-playlist list1";
+        cmdExec.execute(dummyHashCode, message);
+        message = "session-token";
+        String tokenReply = cmdExec.execute(dummyHashCode, message).strip();
+        String token = tokenReply.substring("[ Session token: ".length(), tokenReply.length() - " ]".length());
+        cmdExec.closeSession(dummyHashCode);
+
+        long reconnectedId = dummyHashCode + 1;
+        message = "resume " + token;
+        cmdExec.execute(reconnectedId, message);
+
+        assertEquals("Wrong song after resume.", "adele-hello", cmdExec.getNowPlaying(reconnectedId));
+        assertEquals("Wrong song queued after resume.", "fletcher-bitter", cmdExec.getNextQueued(reconnectedId));
+    }
+
+    @Test
+    public void testResumeInvalidToken() {
+        String message = "resume missing";
+        String actualReply = cmdExec.execute(dummyHashCode, message);
+
+        String expectedReply = "[ Invalid session token ]" + System.lineSeparator();
+
+        assertEquals("Wrong server response for resume.", expectedReply, actualReply);
+    }
+
     @Test
     public void testLogoutNotLoggedIn() {
         String message = "logout";
@@ -545,6 +798,28 @@ public class CommandExecutorTest {
         assertEquals("Wrong server response for disconnect.", expectedReply, actualReply);
     }
 
+    @Test
+    public void testStatsNotAdmin() {
+        String message = "login simo@gmail.com parola";
+        cmdExec.execute(dummyHashCode, message);
+        message = "stats";
+        String actualReply = cmdExec.execute(dummyHashCode, message);
+
+        String expectedReply = "[ Only administrators can see the server statistics ]" + System.lineSeparator();
+
+        assertEquals("Wrong server response for stats.", expectedReply, actualReply);
+        assertEquals("Command latency not recorded.", 1,
+                cmdExec.getMetrics().getCommandCounts().get("login").longValue());
+    }
+
+    @Test
+    public void testParseAdmins() {
+        Set<String> admins = CommandExecutor.parseAdmins(" simo@gmail.com, ,admin@gmail.com,simo@gmail.com ,");
+
+        assertEquals("Wrong administrators.", Set.of("simo@gmail.com", "admin@gmail.com"), admins);
+        assertEquals("Wrong administrators of an empty property.", Set.of(), CommandExecutor.parseAdmins(""));
+    }
+
     @Test
     public void testUnknownCommand() {
         String message = "bla";
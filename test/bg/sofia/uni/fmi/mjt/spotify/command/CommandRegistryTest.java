@@ -0,0 +1,78 @@
+package bg.sofia.uni.fmi.mjt.spotify.command;
+
+import bg.sofia.uni.fmi.mjt.spotify.metrics.ServerMetrics;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class CommandRegistryTest {
+
+    private CommandRegistry registry;
+
+    @Before
+    public void initialize() {
+        registry = new CommandRegistry(new ServerMetrics());
+        registry.register("play", true, (session, message) -> "play " + message);
+        registry.register("playlist", true, (session, message) -> "playlist " + message);
+        registry.register("stop", false, (session, message) -> "stopped");
+    }
+
+    @Test
+    public void testDispatchByWholeVerb() {
+        assertEquals("Wrong handler.", "play play song", registry.dispatch(null, "play song").text());
+        assertEquals("Verb shadowed by its prefix.", "playlist playlist rock",
+                registry.dispatch(null, "playlist rock").text());
+        assertEquals("Wrong handler.", "stopped", registry.dispatch(null, "stop").text());
+    }
+
+    @Test
+    public void testDispatchUnknownCommand() {
+        assertEquals("Wrong reply.", CommandRegistry.UNKNOWN_COMMAND, registry.dispatch(null, "pla song").text());
+        assertEquals("Wrong reply.", CommandRegistry.UNKNOWN_COMMAND, registry.dispatch(null, "stopping").text());
+        assertEquals("Wrong reply.", CommandRegistry.UNKNOWN_COMMAND, registry.dispatch(null, "stop now").text());
+    }
+
+    @Test
+    public void testStatistics() {
+        registry.dispatch(null, "play song");
+        registry.dispatch(null, "play other");
+        registry.dispatch(null, "unknown");
+
+        assertEquals("Wrong number of executions.", 2, registry.statistics().get("play").count());
+        assertEquals("Wrong number of executions.", 0, registry.statistics().get("stop").count());
+        assertEquals("Wrong number of commands.", 3, registry.statistics().size());
+    }
+
+    @Test
+    public void testCommandEventRecorded() throws IOException {
+        Path dump = Files.createTempFile("commands", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("bg.sofia.uni.fmi.mjt.spotify.Command");
+            recording.start();
+            registry.dispatch(null, "play song");
+            recording.stop();
+            recording.dump(dump);
+
+            List<RecordedEvent> events = RecordingFile.readAllEvents(dump);
+            assertEquals("Wrong number of events.", 1, events.size());
+            assertEquals("Wrong command.", "play", events.get(0).getString("command"));
+        } finally {
+            Files.delete(dump);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRegisterTwice() {
+        registry.register("play", true, (session, message) -> "");
+    }
+}
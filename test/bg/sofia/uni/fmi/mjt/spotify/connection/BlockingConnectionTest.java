@@ -0,0 +1,81 @@
+package bg.sofia.uni.fmi.mjt.spotify.connection;
+
+import bg.sofia.uni.fmi.mjt.spotify.command.CommandExecutor;
+import bg.sofia.uni.fmi.mjt.spotify.exceptions.ExceptionLogger;
+import bg.sofia.uni.fmi.mjt.spotify.metrics.ServerMetrics;
+import bg.sofia.uni.fmi.mjt.spotify.streaming.Frames;
+import bg.sofia.uni.fmi.mjt.spotify.streaming.StreamingMode;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+
+public class BlockingConnectionTest {
+
+    private ServerMetrics metrics;
+    private CommandExecutor cmdExec;
+    private ExecutorService streamExecutor;
+
+    @Before
+    public void initialize() {
+        metrics = new ServerMetrics();
+        cmdExec = new CommandExecutor(metrics);
+        streamExecutor = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void close() {
+        streamExecutor.shutdownNow();
+        cmdExec.close();
+    }
+
+    @Test
+    public void testSkipThroughQueueClosesReplacedStreams() throws IOException, InterruptedException {
+        try (ServerSocketChannel server = ServerSocketChannel.open()) {
+            server.bind(new InetSocketAddress("localhost", 0));
+            SocketChannel client = SocketChannel.open(server.getLocalAddress());
+            BlockingConnection connection = new BlockingConnection(server.accept(), cmdExec, streamExecutor,
+                    StreamingMode.MAPPED, metrics, new ExceptionLogger());
+            Thread connectionThread = new Thread(connection);
+            connectionThread.start();
+
+            try (client) {
+                String commands = "login simo@gmail.com parola\nplay-playlist list1\nskip\nskip\n";
+                client.write(ByteBuffer.wrap(commands.getBytes(StandardCharsets.UTF_8)));
+
+                int replies = readReplies(Channels.newInputStream(client), 4);
+                assertEquals("Wrong number of replies.", 4, replies);
+            }
+            connectionThread.join();
+        }
+
+        assertEquals("Replaced streams were not closed.", 0, metrics.getActiveStreams());
+    }
+
+    private static int readReplies(InputStream input, int expected) throws IOException {
+        DataInputStream in = new DataInputStream(input);
+        int replies = 0;
+        while (replies < expected) {
+            byte type = in.readByte();
+            in.readFully(new byte[in.readInt()]);
+            if (type == Frames.REPLY || type == Frames.AUDIO_HEADER) {
+                replies++;
+            }
+        }
+        return replies;
+    }
+}
@@ -0,0 +1,63 @@
+package bg.sofia.uni.fmi.mjt.spotify.connection;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class LineFramerTest {
+
+    private LineFramer framer;
+
+    @Before
+    public void initialize() {
+        framer = new LineFramer(new BufferPool(16, 4), new TextCodec());
+    }
+
+    @Test
+    public void testNextLinePipelinedCommands() throws IOException {
+        receive("login a b\r\nstop\n");
+
+        assertEquals("Wrong first command.", "login a b", framer.nextLine());
+        assertEquals("Wrong second command.", "stop", framer.nextLine());
+        assertNull("Unexpected command.", framer.nextLine());
+    }
+
+    @Test
+    public void testNextLinePartialCommand() throws IOException {
+        receive("play adele");
+        assertNull("Incomplete command returned.", framer.nextLine());
+
+        receive("-hello\n");
+        assertEquals("Wrong command.", "play adele-hello", framer.nextLine());
+    }
+
+    @Test
+    public void testNextLineGrowsBufferForLongCommand() throws IOException {
+        String command = "search " + "x".repeat(100);
+        receive(command + "\n");
+
+        assertEquals("Wrong long command.", command, framer.nextLine());
+    }
+
+    @Test(expected = IOException.class)
+    public void testReadBufferRejectsTooLongCommand() throws IOException {
+        receive("x".repeat(64 * 1024 + 1));
+    }
+
+    private void receive(String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        int offset = 0;
+        while (offset < bytes.length) {
+            ByteBuffer buffer = framer.readBuffer();
+            int length = Math.min(buffer.remaining(), bytes.length - offset);
+            buffer.put(bytes, offset, length);
+            offset += length;
+        }
+    }
+}
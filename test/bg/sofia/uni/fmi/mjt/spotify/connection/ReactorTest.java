@@ -0,0 +1,59 @@
+package bg.sofia.uni.fmi.mjt.spotify.connection;
+
+import bg.sofia.uni.fmi.mjt.spotify.command.CommandExecutor;
+import bg.sofia.uni.fmi.mjt.spotify.exceptions.ExceptionLogger;
+import bg.sofia.uni.fmi.mjt.spotify.metrics.ServerMetrics;
+import bg.sofia.uni.fmi.mjt.spotify.streaming.StreamingMode;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class ReactorTest {
+
+    private ServerMetrics metrics;
+    private CommandExecutor cmdExec;
+    private ExecutorService commandExecutor;
+
+    @Before
+    public void initialize() {
+        metrics = new ServerMetrics();
+        cmdExec = new CommandExecutor(metrics);
+        commandExecutor = Executors.newSingleThreadExecutor();
+    }
+
+    @After
+    public void close() {
+        commandExecutor.shutdownNow();
+        cmdExec.close();
+    }
+
+    @Test
+    public void testShutdownClosesPendingConnections() throws IOException, InterruptedException {
+        AtomicInteger closed = new AtomicInteger();
+        Reactor reactor = new Reactor(cmdExec, commandExecutor, StreamingMode.MAPPED, metrics,
+                new ExceptionLogger(), 1000, closed::incrementAndGet);
+        SocketChannel beforeStop = SocketChannel.open();
+        SocketChannel afterStop = SocketChannel.open();
+
+        reactor.register(beforeStop);
+        reactor.shutdown();
+        Thread reactorThread = new Thread(reactor);
+        reactorThread.start();
+        reactorThread.join();
+        reactor.register(afterStop);
+
+        assertFalse("Connection pending at shutdown not closed.", beforeStop.isOpen());
+        assertFalse("Connection handed over after shutdown not closed.", afterStop.isOpen());
+        assertEquals("Wrong number of closed connections.", 2, closed.get());
+    }
+}
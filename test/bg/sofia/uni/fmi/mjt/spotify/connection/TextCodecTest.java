@@ -0,0 +1,57 @@
+package bg.sofia.uni.fmi.mjt.spotify.connection;
+
+import bg.sofia.uni.fmi.mjt.spotify.streaming.Frames;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+
+public class TextCodecTest {
+
+    private TextCodec codec;
+    private BufferPool pool;
+
+    @Before
+    public void initialize() {
+        codec = new TextCodec();
+        pool = new BufferPool(64, 4);
+    }
+
+    @Test
+    public void testEncodeFrameStripsTrailingWhitespace() {
+        ByteBuffer frame = codec.encodeFrame(Frames.REPLY, "[ Song stopped successfully ]" + System.lineSeparator(),
+                pool);
+
+        assertEquals("Wrong frame type.", Frames.REPLY, frame.get());
+        assertEquals("Wrong payload.", "[ Song stopped successfully ]", payload(frame));
+    }
+
+    @Test
+    public void testEncodeFrameBiggerThanPooledBufferKeepsType() {
+        String header = "Encoding:PCM_SIGNED SampleRate:44100.0 SampleSizeInBits:16 Channels:2 FrameSize:4 "
+                + "FrameRate:44100.0 BigEndian:false some-artist-with-a-rather-long-song-name";
+
+        ByteBuffer frame = codec.encodeFrame(Frames.AUDIO_NEXT, header, pool);
+
+        assertEquals("Wrong frame type.", Frames.AUDIO_NEXT, frame.get());
+        assertEquals("Wrong payload.", header, payload(frame));
+    }
+
+    @Test
+    public void testDecode() {
+        ByteBuffer bytes = ByteBuffer.wrap("play adele-hello".getBytes(StandardCharsets.UTF_8));
+
+        assertEquals("Wrong decoded text.", "play adele-hello", codec.decode(bytes));
+    }
+
+    private static String payload(ByteBuffer frame) {
+        byte[] payload = new byte[frame.getInt()];
+        frame.get(payload);
+        assertEquals("Frame has trailing bytes.", 0, frame.remaining());
+        return new String(payload, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,54 @@
+package bg.sofia.uni.fmi.mjt.spotify.connection;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class TimerWheelTest {
+
+    private TimerWheel<String> wheel;
+    private List<String> expired;
+
+    @Before
+    public void initialize() {
+        wheel = new TimerWheel<>(8, 100, 0);
+        expired = new ArrayList<>();
+    }
+
+    @Test
+    public void testAdvanceExpiresDueTimers() {
+        wheel.schedule("first", 250);
+        wheel.schedule("second", 450);
+
+        wheel.advance(300, expired::add);
+        assertEquals("Wrong expired timers.", List.of("first"), expired);
+
+        wheel.advance(500, expired::add);
+        assertEquals("Wrong expired timers.", List.of("first", "second"), expired);
+    }
+
+    @Test
+    public void testAdvanceKeepsTimersOfLaterTurns() {
+        wheel.schedule("later", 1250);
+
+        wheel.advance(900, expired::add);
+        assertEquals("Timer of a later turn expired.", List.of(), expired);
+
+        wheel.advance(1300, expired::add);
+        assertEquals("Wrong expired timers.", List.of("later"), expired);
+    }
+
+    @Test
+    public void testAdvanceOverMoreThanOneTurn() {
+        wheel.schedule("first", 150);
+        wheel.schedule("second", 650);
+
+        wheel.advance(5000, expired::add);
+
+        assertEquals("Wrong expired timers.", List.of("first", "second"), expired);
+    }
+}
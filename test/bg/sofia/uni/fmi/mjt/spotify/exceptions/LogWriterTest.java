@@ -0,0 +1,118 @@
+package bg.sofia.uni.fmi.mjt.spotify.exceptions;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LogWriterTest {
+
+    private Path directory;
+    private Path file;
+
+    @Before
+    public void initialize() throws IOException {
+        directory = Files.createTempDirectory("log-writer");
+        file = directory.resolve("logger.txt");
+    }
+
+    @After
+    public void cleanUp() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path path : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    @Test
+    public void testLogException() throws IOException {
+        try (LogWriter writer = writer(1024 * 1024, 10)) {
+            new ExceptionLogger(writer).logException(new IOException("disk is on fire"));
+            writer.flush();
+
+            String log = Files.readString(file);
+            assertTrue("Missing stack trace.", log.contains("Exception stacktrace: "));
+            assertTrue("Missing exception.", log.contains("java.io.IOException: disk is on fire"));
+        }
+    }
+
+    @Test
+    public void testRepeatedStackTraceIsRateLimited() throws IOException {
+        try (LogWriter writer = writer(1024 * 1024, 3)) {
+            for (int i = 0; i < 20; i++) {
+                writer.log(new IllegalStateException("same place"));
+            }
+            writer.log(new IllegalArgumentException("other place"));
+            writer.flush();
+
+            String log = Files.readString(file);
+            assertEquals("Wrong number of logged exceptions.", 4, occurrences(log, "Exception stacktrace: "));
+        }
+
+        assertTrue("Suppressed exceptions not reported on close.",
+                Files.readString(file).contains("Suppressed 17 more exceptions"));
+    }
+
+    @Test
+    public void testRotation() throws IOException {
+        try (LogWriter writer = writer(1024, Integer.MAX_VALUE)) {
+            for (int i = 0; i < 60; i++) {
+                IOException exception = new IOException("exception " + i);
+                exception.setStackTrace(new StackTraceElement[0]);
+                writer.log(exception);
+                writer.flush();
+            }
+        }
+
+        assertTrue("The log was not rotated.", Files.exists(directory.resolve("logger.txt.1")));
+        assertTrue("The log was not rotated.", Files.exists(directory.resolve("logger.txt.2")));
+        assertFalse("Too many rotated files kept.", Files.exists(directory.resolve("logger.txt.3")));
+        assertTrue("The log grew past its maximum size.", Files.size(file) <= 1024);
+        assertTrue("The latest exception is missing.", Files.readString(file).contains("exception 59"));
+    }
+
+    @Test
+    public void testIdleWriterWakesUpOnLog() throws IOException, InterruptedException {
+        try (LogWriter writer = writer(1024 * 1024, 10)) {
+            Thread.sleep(100);
+            writer.log(new IOException("woke the writer"));
+
+            long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(5);
+            while (!(Files.exists(file) && Files.readString(file).contains("woke the writer"))
+                    && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertTrue("The idle writer did not write the exception.",
+                    Files.exists(file) && Files.readString(file).contains("woke the writer"));
+        }
+    }
+
+    @Test
+    public void testParseOverflowPolicy() {
+        assertEquals("Wrong policy parsed.", OverflowPolicy.BLOCK, OverflowPolicy.parse(" block "));
+        assertEquals("Unknown policy should fall back to DROP.", OverflowPolicy.DROP, OverflowPolicy.parse("BLOK"));
+    }
+
+    private LogWriter writer(long maxFileBytes, int rateLimit) {
+        return new LogWriter(file, 64, maxFileBytes, 2, OverflowPolicy.BLOCK, rateLimit, TimeUnit.MINUTES.toMillis(1));
+    }
+
+    private static int occurrences(String text, String part) {
+        int count = 0;
+        for (int index = text.indexOf(part); index >= 0; index = text.indexOf(part, index + 1)) {
+            count++;
+        }
+        return count;
+    }
+}
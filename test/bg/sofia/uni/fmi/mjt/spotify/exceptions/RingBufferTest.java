@@ -0,0 +1,68 @@
+package bg.sofia.uni.fmi.mjt.spotify.exceptions;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RingBufferTest {
+
+    @Test
+    public void testOfferPollInOrderUntilFull() {
+        RingBuffer<Integer> buffer = new RingBuffer<>(3);
+
+        assertEquals("Wrong capacity.", 4, buffer.capacity());
+        for (int i = 0; i < 4; i++) {
+            assertTrue("Offer to a buffer with free slots failed.", buffer.offer(i));
+        }
+        assertFalse("Offer to a full buffer succeeded.", buffer.offer(4));
+        assertEquals("Wrong item.", Integer.valueOf(0), buffer.poll());
+        assertTrue("Offer after a poll failed.", buffer.offer(4));
+        for (int i = 1; i <= 4; i++) {
+            assertEquals("Wrong item.", Integer.valueOf(i), buffer.poll());
+        }
+        assertNull("Poll from an empty buffer returned an item.", buffer.poll());
+        assertEquals("Wrong number of offered items.", 5, buffer.offered());
+    }
+
+    @Test
+    public void testConcurrentProducers() throws InterruptedException {
+        RingBuffer<Integer> buffer = new RingBuffer<>(64);
+        int producers = 4;
+        int itemsPerProducer = 10_000;
+        Thread[] threads = new Thread[producers];
+        for (int p = 0; p < producers; p++) {
+            int first = p * itemsPerProducer;
+            threads[p] = new Thread(() -> {
+                for (int i = first; i < first + itemsPerProducer; i++) {
+                    while (!buffer.offer(i)) {
+                        Thread.onSpinWait();
+                    }
+                }
+            });
+            threads[p].start();
+        }
+
+        Set<Integer> received = new HashSet<>();
+        int[] lastPerProducer = new int[producers];
+        Arrays.fill(lastPerProducer, -1);
+        while (received.size() < producers * itemsPerProducer) {
+            Integer item = buffer.poll();
+            if (item != null) {
+                assertTrue("Item received twice.", received.add(item));
+                assertTrue("Items of a producer reordered.", item > lastPerProducer[item / itemsPerProducer]);
+                lastPerProducer[item / itemsPerProducer] = item;
+            }
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertNull("Unexpected extra item.", buffer.poll());
+    }
+}
@@ -0,0 +1,61 @@
+package bg.sofia.uni.fmi.mjt.spotify.metrics;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testEmpty() {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        assertEquals("Wrong count.", 0, histogram.count());
+        assertEquals("Wrong percentile of an empty histogram.", 0, histogram.percentile(99));
+    }
+
+    @Test
+    public void testSmallValuesAreExact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 10; i++) {
+            histogram.record(i);
+        }
+
+        assertEquals("Wrong median.", 5, histogram.percentile(50));
+        assertEquals("Wrong maximum.", 10, histogram.percentile(100));
+        assertEquals("Wrong total.", 55, histogram.summary().totalNanos());
+    }
+
+    @Test
+    public void testPercentilesWithinRelativeError() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Random random = new Random(42);
+        long[] values = new long[100_000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (long) Math.exp(random.nextDouble() * 25);
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+
+        for (double percentile : new double[] {50, 90, 99, 99.9}) {
+            long expected = values[(int) Math.ceil(percentile / 100 * values.length) - 1];
+            long actual = histogram.percentile(percentile);
+            assertTrue("Percentile " + percentile + " below its value.", actual >= expected);
+            assertTrue("Percentile " + percentile + " too far from its value.", actual <= expected * 17 / 16 + 1);
+        }
+        assertEquals("Wrong count.", values.length, histogram.count());
+        assertEquals("Wrong maximum.", values[values.length - 1], histogram.summary().maxNanos());
+    }
+
+    @Test
+    public void testIndexesAreContinuous() {
+        for (int index = 1; index < 600; index++) {
+            assertEquals("Gap between buckets.", index,
+                    LatencyHistogram.index(LatencyHistogram.highestValue(index - 1) + 1));
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package bg.sofia.uni.fmi.mjt.spotify.playback;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class AudioRingBufferTest {
+
+    @Test
+    public void testWriteReadAcrossTheEnd() {
+        AudioRingBuffer buffer = new AudioRingBuffer(6);
+        byte[] read = new byte[8];
+
+        assertEquals("Wrong capacity.", 8, buffer.capacity());
+        assertEquals("Wrong number of written bytes.", 6, buffer.write(new byte[] {1, 2, 3, 4, 5, 6}, 0, 6));
+        assertEquals("Wrong number of read bytes.", 4, buffer.read(read, 0, 4));
+        assertEquals("Wrong number of written bytes.", 6, buffer.write(new byte[] {7, 8, 9, 10, 11, 12, 13}, 0, 7));
+        assertEquals("Wrong number of written bytes to a full buffer.", 0, buffer.write(new byte[] {14}, 0, 1));
+        assertEquals("Wrong number of available bytes.", 8, buffer.available());
+        assertEquals("Wrong number of read bytes.", 8, buffer.read(read, 0, 8));
+        assertArrayEquals("Wrong bytes.", new byte[] {5, 6, 7, 8, 9, 10, 11, 12}, read);
+        assertEquals("Wrong number of read bytes from an empty buffer.", 0, buffer.read(read, 0, 8));
+    }
+
+    @Test
+    public void testConcurrentWriterAndReader() throws InterruptedException {
+        AudioRingBuffer buffer = new AudioRingBuffer(1024);
+        int total = 1_000_000;
+        Thread writer = new Thread(() -> {
+            byte[] chunk = new byte[300];
+            int written = 0;
+            while (written < total) {
+                int length = Math.min(chunk.length, total - written);
+                for (int i = 0; i < length; i++) {
+                    chunk[i] = (byte) (written + i);
+                }
+                int offset = 0;
+                while (offset < length) {
+                    offset += buffer.write(chunk, offset, length - offset);
+                }
+                written += length;
+            }
+        });
+        writer.start();
+
+        byte[] chunk = new byte[257];
+        int read = 0;
+        while (read < total) {
+            int count = buffer.read(chunk, 0, chunk.length);
+            for (int i = 0; i < count; i++) {
+                assertEquals("Bytes corrupted or reordered.", (byte) (read + i), chunk[i]);
+            }
+            read += count;
+        }
+        writer.join();
+    }
+}
@@ -0,0 +1,70 @@
+package bg.sofia.uni.fmi.mjt.spotify.search;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class SongSearchIndexTest {
+
+    private SongSearchIndex index;
+
+    @Before
+    public void initialize() {
+        index = new SongSearchIndex();
+        index.add("adele", "hello");
+        index.add("adele", "skyfall");
+        index.add("fletcher", "bitter");
+        index.add("lionel", "hello");
+    }
+
+    @Test
+    public void testSearchShortWordRanksPrefixFirst() {
+        List<String> expected = List.of("lionel-hello", "adele-hello", "adele-skyfall", "fletcher-bitter");
+
+        assertEquals("Wrong search result for a short word.", expected, index.search(List.of("l"), 10));
+    }
+
+    @Test
+    public void testSearchLongWordVerifiesCandidates() {
+        List<String> expected = List.of("adele-skyfall");
+
+        assertEquals("Wrong search result for a long word.", expected, index.search(List.of("yfall"), 10));
+    }
+
+    @Test
+    public void testSearchNoResults() {
+        assertEquals("Wrong search result for a missing word.", List.of(), index.search(List.of("azis"), 10));
+    }
+
+    @Test
+    public void testSearchRanksPrefixAndMultipleMatchesFirst() {
+        List<String> expected = List.of("adele-hello", "lionel-hello", "adele-skyfall", "fletcher-bitter");
+
+        assertEquals("Wrong ranking of search results.", expected, index.search(List.of("hel", "le"), 10));
+    }
+
+    @Test
+    public void testSearchLimit() {
+        List<String> expected = List.of("adele-hello", "lionel-hello");
+
+        assertEquals("Wrong number of search results.", expected, index.search(List.of("hel", "le"), 2));
+    }
+
+    @Test
+    public void testSearchLimitKeepsBestOfManyMatches() {
+        for (int i = 0; i < 100; i++) {
+            index.add("artist" + i, "song");
+        }
+        List<String> expected = List.of("adele-hello", "adele-skyfall", "artist0-song");
+
+        assertEquals("Wrong best matches.", expected, index.search(List.of("a"), 3));
+    }
+
+    @Test
+    public void testSearchZeroLimit() {
+        assertEquals("Unexpected search results.", List.of(), index.search(List.of("hel"), 0));
+    }
+}
@@ -0,0 +1,55 @@
+package bg.sofia.uni.fmi.mjt.spotify.security;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PasswordHasherTest {
+
+    private final PasswordHasher hasher = new PasswordHasher(1000);
+
+    @Test
+    public void testVerifyHashedPassword() {
+        String stored = hasher.hash("parola");
+
+        assertTrue("Correct password rejected.", hasher.verify("parola", stored));
+        assertFalse("Wrong password accepted.", hasher.verify("parola1", stored));
+    }
+
+    @Test
+    public void testHashIsSalted() {
+        assertFalse("Same hash for two registrations.", hasher.hash("parola").equals(hasher.hash("parola")));
+    }
+
+    @Test
+    public void testVerifyPlaintextPasswordNeedsRehash() {
+        assertTrue("Correct plaintext password rejected.", hasher.verify("parola", "parola"));
+        assertFalse("Wrong plaintext password accepted.", hasher.verify("parol", "parola"));
+        assertTrue("Plaintext password should be rehashed.", hasher.needsRehash("parola"));
+    }
+
+    @Test
+    public void testNeedsRehashWithMoreIterations() {
+        String stored = hasher.hash("parola");
+
+        assertFalse("Current hash should not be rehashed.", hasher.needsRehash(stored));
+        assertTrue("Weaker hash should be rehashed.", new PasswordHasher(2000).needsRehash(stored));
+    }
+
+    @Test
+    public void testMalformedHashIsRejectedAndRehashed() {
+        String[] malformed = {
+            "pbkdf2-sha256$many$c2FsdA==$aGFzaA==",
+            "pbkdf2-sha256$0$c2FsdA==$aGFzaA==",
+            "pbkdf2-sha256$1000$not base64$aGFzaA==",
+            "pbkdf2-sha256$1000$$aGFzaA==",
+            "pbkdf2-sha256$1000$c2FsdA=="
+        };
+
+        for (String stored : malformed) {
+            assertFalse("Malformed hash " + stored + " accepted.", hasher.verify("parola", stored));
+            assertTrue("Malformed hash " + stored + " should be rehashed.", hasher.needsRehash(stored));
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package bg.sofia.uni.fmi.mjt.spotify.security;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class VerifiedCredentialsTest {
+
+    private long now;
+    private VerifiedCredentials verified;
+
+    @Before
+    public void initialize() {
+        now = 0;
+        verified = new VerifiedCredentials(1, 1000, () -> now);
+        verified.add("simo@gmail.com", "parola", "hash");
+    }
+
+    @Test
+    public void testContainsSameCredentials() {
+        assertTrue("Verified login not remembered.", verified.contains("simo@gmail.com", "parola", "hash"));
+    }
+
+    @Test
+    public void testContainsOtherPasswordOrHash() {
+        assertFalse("Other password accepted.", verified.contains("simo@gmail.com", "parola1", "hash"));
+        assertFalse("Changed hash accepted.", verified.contains("simo@gmail.com", "parola", "hash1"));
+    }
+
+    @Test
+    public void testContainsExpiredOrEvicted() {
+        now = 2000;
+        assertFalse("Expired login accepted.", verified.contains("simo@gmail.com", "parola", "hash"));
+
+        verified.add("simo@gmail.com", "parola", "hash");
+        verified.add("other@gmail.com", "parola", "hash");
+        assertFalse("Evicted login accepted.", verified.contains("simo@gmail.com", "parola", "hash"));
+    }
+}
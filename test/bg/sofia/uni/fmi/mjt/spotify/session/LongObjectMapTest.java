@@ -0,0 +1,55 @@
+package bg.sofia.uni.fmi.mjt.spotify.session;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class LongObjectMapTest {
+
+    private LongObjectMap<String> map;
+
+    @Before
+    public void initialize() {
+        map = new LongObjectMap<>();
+    }
+
+    @Test
+    public void testPutGetRemove() {
+        assertNull("Unexpected previous value.", map.put(42, "simo"));
+        assertEquals("Wrong previous value.", "simo", map.put(42, "other"));
+        assertEquals("Wrong value.", "other", map.get(42));
+        assertEquals("Wrong removed value.", "other", map.remove(42));
+        assertNull("Removed key still present.", map.get(42));
+        assertEquals("Wrong size.", 0, map.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testReservedKey() {
+        map.put(0, "simo");
+    }
+
+    @Test
+    public void testMatchesHashMapUnderRandomOperations() {
+        Map<Long, String> expected = new HashMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 100_000; i++) {
+            long key = 1 + random.nextInt(512);
+            if (random.nextBoolean()) {
+                assertEquals("Wrong previous value.", expected.put(key, "v" + i), map.put(key, "v" + i));
+            } else {
+                assertEquals("Wrong removed value.", expected.remove(key), map.remove(key));
+            }
+        }
+
+        assertEquals("Wrong size.", expected.size(), map.size());
+        for (long key = 1; key <= 512; key++) {
+            assertEquals("Wrong value.", expected.get(key), map.get(key));
+        }
+    }
+}
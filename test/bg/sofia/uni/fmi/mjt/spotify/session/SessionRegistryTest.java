@@ -0,0 +1,48 @@
+package bg.sofia.uni.fmi.mjt.spotify.session;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class SessionRegistryTest {
+
+    private SessionRegistry sessions;
+
+    @Before
+    public void initialize() {
+        sessions = new SessionRegistry();
+    }
+
+    @Test
+    public void testGetOpenedSession() {
+        long id = sessions.open();
+
+        assertNotNull("Opened session not found.", sessions.get(id));
+    }
+
+    @Test
+    public void testGetDoesNotReopenClosedSession() {
+        long id = sessions.open();
+        sessions.detach(id);
+
+        assertNull("Closed session found.", sessions.get(id));
+        assertEquals("Closed session reopened.", 0, sessions.size());
+    }
+
+    @Test
+    public void testResumeDetachedSession() {
+        long id = sessions.open();
+        Session session = sessions.get(id);
+        session.user("test@gmail.com");
+        String token = sessions.issueToken(session);
+        sessions.detach(id);
+
+        Session resumed = sessions.resume(token);
+
+        assertEquals("Wrong resumed user.", "test@gmail.com", resumed.user());
+        assertNull("Token not consumed.", sessions.resume(token));
+    }
+}
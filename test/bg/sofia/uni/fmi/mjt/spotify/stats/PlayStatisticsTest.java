@@ -0,0 +1,70 @@
+package bg.sofia.uni.fmi.mjt.spotify.stats;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+public class PlayStatisticsTest {
+
+    private long now;
+    private PlayStatistics statistics;
+
+    @Before
+    public void initialize() {
+        now = TimeUnit.DAYS.toMillis(100);
+        statistics = new PlayStatistics(new TopSongsTracker(), Map.of("lionel-hello", 10L), () -> now);
+    }
+
+    @Test
+    public void testTopNowRanksPlayingSongs() {
+        statistics.started("adele-hello");
+        statistics.started("fletcher-bitter");
+        statistics.started("fletcher-bitter");
+        statistics.stopped("adele-hello");
+
+        assertEquals("Wrong top songs now.", List.of("fletcher-bitter"), statistics.top(5, StatisticsWindow.NOW));
+    }
+
+    @Test
+    public void testTopHourForgetsOlderPlays() {
+        statistics.started("adele-hello");
+        statistics.started("adele-hello");
+        now += TimeUnit.MINUTES.toMillis(90);
+        statistics.started("fletcher-bitter");
+
+        assertEquals("Wrong top songs in the last hour.", List.of("fletcher-bitter"),
+                statistics.top(5, StatisticsWindow.HOUR));
+        assertEquals("Wrong top songs in the last day.", List.of("adele-hello", "fletcher-bitter"),
+                statistics.top(5, StatisticsWindow.DAY));
+    }
+
+    @Test
+    public void testTopDayKeepsRolledUpPlays() {
+        statistics.started("adele-hello");
+        statistics.started("adele-hello");
+        for (int minute = 1; minute <= 120; minute++) {
+            now += TimeUnit.MINUTES.toMillis(1);
+            statistics.started("fletcher-bitter");
+        }
+
+        assertEquals("Wrong top songs in the last day.", List.of("fletcher-bitter", "adele-hello"),
+                statistics.top(5, StatisticsWindow.DAY));
+
+        now += TimeUnit.DAYS.toMillis(2);
+        assertEquals("Wrong top songs after a day.", List.of(), statistics.top(5, StatisticsWindow.DAY));
+    }
+
+    @Test
+    public void testTopAllIncludesRestoredTotals() {
+        statistics.started("adele-hello");
+
+        assertEquals("Wrong top songs of all time.", List.of("lionel-hello", "adele-hello"),
+                statistics.top(5, StatisticsWindow.ALL));
+        assertEquals("Wrong totals.", Map.of("lionel-hello", 10L, "adele-hello", 1L), statistics.totals());
+    }
+}
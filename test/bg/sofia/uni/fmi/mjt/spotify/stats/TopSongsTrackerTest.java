@@ -0,0 +1,72 @@
+package bg.sofia.uni.fmi.mjt.spotify.stats;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TopSongsTrackerTest {
+
+    private TopSongsTracker tracker;
+
+    @Before
+    public void initialize() {
+        tracker = new TopSongsTracker();
+        tracker.increment("adele-hello");
+        tracker.increment("adele-hello");
+        tracker.increment("adele-hello");
+        tracker.increment("fletcher-bitter");
+        tracker.increment("fletcher-bitter");
+        tracker.increment("lionel-hello");
+    }
+
+    @Test
+    public void testTopOrdersByCount() {
+        List<String> expected = List.of("adele-hello", "fletcher-bitter", "lionel-hello");
+
+        assertEquals("Wrong top songs.", expected, tracker.top(5));
+    }
+
+    @Test
+    public void testTopLimitsResult() {
+        assertEquals("Wrong top songs.", List.of("adele-hello"), tracker.top(1));
+    }
+
+    @Test
+    public void testDecrementReordersAndRemoves() {
+        tracker.decrement("adele-hello");
+        tracker.decrement("adele-hello");
+        tracker.decrement("lionel-hello");
+
+        assertEquals("Wrong top songs after stops.", List.of("fletcher-bitter", "adele-hello"), tracker.top(5));
+        assertEquals("Wrong count of a stopped song.", 0, tracker.count("lionel-hello"));
+    }
+
+    @Test
+    public void testDecrementAllEmptiesTracker() {
+        for (int i = 0; i < 3; i++) {
+            tracker.decrement("adele-hello");
+            tracker.decrement("fletcher-bitter");
+            tracker.decrement("lionel-hello");
+        }
+
+        assertTrue("Tracker should be empty.", tracker.isEmpty());
+        assertEquals("Wrong top songs of an empty tracker.", List.of(), tracker.top(5));
+    }
+
+    @Test
+    public void testLimitedCapacityKeepsHeavyHitters() {
+        TopSongsTracker summary = new TopSongsTracker(2);
+        for (int i = 0; i < 10; i++) {
+            summary.increment("adele-hello");
+            summary.increment("adele-hello");
+            summary.increment("song-" + i);
+        }
+
+        assertEquals("Wrong heavy hitter.", List.of("adele-hello"), summary.top(1));
+        assertEquals("Wrong count of the heavy hitter.", 20, summary.count("adele-hello"));
+    }
+}
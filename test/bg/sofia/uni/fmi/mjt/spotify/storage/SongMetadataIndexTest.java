@@ -0,0 +1,83 @@
+package bg.sofia.uni.fmi.mjt.spotify.storage;
+
+import bg.sofia.uni.fmi.mjt.spotify.exceptions.ExceptionLogger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SongMetadataIndexTest {
+
+    private Path directory;
+    private Path indexFile;
+    private String valid;
+    private String broken;
+
+    @Before
+    public void initialize() throws IOException {
+        directory = Files.createTempDirectory("metadata-test");
+        indexFile = directory.resolve("songs.idx");
+        valid = directory.resolve("adele-hello").toString();
+        broken = directory.resolve("adele-broken").toString();
+        Files.write(Path.of(valid + ".wav"), wav(44100 * 4));
+        Files.write(Path.of(broken + ".wav"), "RIFF, but nothing more".getBytes());
+    }
+
+    @After
+    public void cleanUp() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Test
+    public void testLoadSkipsUnreadableWav() throws IOException {
+        SongMetadataIndex index = SongMetadataIndex.load(indexFile, List.of(valid, broken), new ExceptionLogger());
+
+        assertTrue("Missing reply of a valid song.", index.playReply(valid).endsWith(" " + valid));
+        assertNull("Unexpected reply of an unreadable song.", index.playReply(broken));
+    }
+
+    @Test
+    public void testLoadReusesSidecarFile() throws IOException {
+        SongMetadataIndex parsed = SongMetadataIndex.load(indexFile, List.of(valid), new ExceptionLogger());
+        assertTrue("Sidecar file not written.", Files.exists(indexFile));
+
+        // same size and modification time, so the entry must come from the sidecar file and not be parsed
+        Path songFile = Path.of(valid + ".wav");
+        FileTime lastModified = Files.getLastModifiedTime(songFile);
+        Files.write(songFile, new byte[(int) Files.size(songFile)]);
+        Files.setLastModifiedTime(songFile, lastModified);
+        SongMetadataIndex reloaded = SongMetadataIndex.load(indexFile, List.of(valid), new ExceptionLogger());
+
+        assertEquals("Wrong reloaded metadata.", parsed.get(valid), reloaded.get(valid));
+        assertEquals("Wrong reloaded reply.", parsed.playReply(valid), reloaded.playReply(valid));
+        assertEquals("Wrong duration.", 1000, reloaded.get(valid).durationMillis());
+    }
+
+    private static byte[] wav(int dataLength) {
+        ByteBuffer wav = ByteBuffer.allocate(44 + dataLength).order(ByteOrder.LITTLE_ENDIAN);
+        wav.put("RIFF".getBytes()).putInt(36 + dataLength).put("WAVE".getBytes());
+        wav.put("fmt ".getBytes()).putInt(16)
+                .putShort((short) 1).putShort((short) 2).putInt(44100).putInt(44100 * 4)
+                .putShort((short) 4).putShort((short) 16);
+        wav.put("data".getBytes()).putInt(dataLength);
+        return wav.array();
+    }
+}
@@ -0,0 +1,108 @@
+package bg.sofia.uni.fmi.mjt.spotify.storage;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class StateSnapshotTest {
+
+    private Path directory;
+    private Path usersFile;
+    private Path songsFile;
+    private Path playlistsFile;
+    private Path snapshotFile;
+
+    @Before
+    public void initialize() throws IOException {
+        directory = Files.createTempDirectory("snapshot-test");
+        usersFile = Files.writeString(directory.resolve("users.txt"), "test@gmail.com parola\n");
+        songsFile = Files.writeString(directory.resolve("songs.txt"), "adele--hello\n");
+        playlistsFile = directory.resolve("playlists.txt");
+        snapshotFile = directory.resolve("test.snapshot");
+
+        new StateSnapshot()
+                .withUsers(usersFile, () -> Map.of("test@gmail.com", "parola", "new@gmail.com", "parola"))
+                .withCatalog(songsFile, () -> Map.of("adele", Set.of("hello")))
+                .withPlaylists(playlistsFile, () -> Map.of("test", List.of("adele-hello")))
+                .withPlayStatistics(Map.of("adele-hello", 3L))
+                .write(snapshotFile);
+    }
+
+    @After
+    public void cleanUp() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Test
+    public void testReadRestoresAllSections() throws IOException {
+        StateSnapshot snapshot = StateSnapshot.read(snapshotFile);
+
+        assertEquals("Wrong users.", Map.of("test@gmail.com", "parola", "new@gmail.com", "parola"),
+                snapshot.users(usersFile));
+        assertEquals("Wrong catalog.", Map.of("adele", Set.of("hello")), snapshot.catalog(songsFile));
+        assertEquals("Wrong playlists.", Map.of("test", List.of("adele-hello")), snapshot.playlists(playlistsFile));
+        assertEquals("Wrong play statistics.", Map.of("adele-hello", 3L), snapshot.playStatistics());
+    }
+
+    @Test
+    public void testReadIgnoresSectionOfChangedFile() throws IOException {
+        Files.writeString(usersFile, "other@gmail.com parola\n");
+        Files.setLastModifiedTime(usersFile, FileTime.fromMillis(0));
+
+        StateSnapshot snapshot = StateSnapshot.read(snapshotFile);
+
+        assertNull("Users of a changed file restored.", snapshot.users(usersFile));
+        assertEquals("Wrong catalog.", Map.of("adele", Set.of("hello")), snapshot.catalog(songsFile));
+    }
+
+    @Test
+    public void testReadDropsCorruptedSection() throws IOException {
+        byte[] bytes = Files.readAllBytes(snapshotFile);
+        byte[] users = "new@gmail.com".getBytes(StandardCharsets.UTF_8);
+        int userIndex = indexOf(bytes, users);
+        bytes[userIndex - 1] = (byte) 0xFF;
+        Files.write(snapshotFile, bytes);
+
+        StateSnapshot snapshot = StateSnapshot.read(snapshotFile);
+
+        assertNull("Users of a corrupted section restored.", snapshot.users(usersFile));
+        assertEquals("Wrong catalog.", Map.of("adele", Set.of("hello")), snapshot.catalog(songsFile));
+        assertEquals("Wrong play statistics.", Map.of("adele-hello", 3L), snapshot.playStatistics());
+    }
+
+    @Test
+    public void testReadMissingSnapshotIsEmpty() throws IOException {
+        StateSnapshot snapshot = StateSnapshot.read(directory.resolve("missing.snapshot"));
+
+        assertNull("Users restored from a missing snapshot.", snapshot.users(usersFile));
+        assertEquals("Wrong play statistics.", Map.of(), snapshot.playStatistics());
+    }
+
+    private static int indexOf(byte[] bytes, byte[] pattern) {
+        for (int i = 0; i <= bytes.length - pattern.length; i++) {
+            if (Arrays.equals(bytes, i, i + pattern.length, pattern, 0, pattern.length)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Pattern not found");
+    }
+}
@@ -0,0 +1,77 @@
+package bg.sofia.uni.fmi.mjt.spotify.storage;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class WriteAheadLogTest {
+
+    private Path directory;
+    private WriteAheadLog crashed;
+
+    @Before
+    public void initialize() throws IOException {
+        directory = Files.createTempDirectory("wal-test");
+        crashed = new WriteAheadLog(directory.resolve("test.wal"), WriteAheadLog.Durability.FSYNC, 1);
+        UserRepository users = new UserRepository(directory.resolve("users.txt"), crashed);
+        PlaylistRepository playlists = new PlaylistRepository(directory.resolve("playlists.txt"), crashed);
+        crashed.recover(users, playlists);
+
+        users.register("test@gmail.com", "parola");
+        playlists.create("test");
+        playlists.add("test", "adele-hello");
+    }
+
+    @After
+    public void cleanUp() throws IOException {
+        crashed.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Test
+    public void testRecoverReplaysCommittedChanges() throws IOException {
+        try (WriteAheadLog wal = new WriteAheadLog(directory.resolve("test.wal"), WriteAheadLog.Durability.FSYNC, 1)) {
+            UserRepository users = new UserRepository(directory.resolve("users.txt"), wal);
+            PlaylistRepository playlists = new PlaylistRepository(directory.resolve("playlists.txt"), wal);
+            wal.recover(users, playlists);
+
+            assertEquals("Wrong recovered password.", "parola", users.password("test@gmail.com"));
+            assertEquals("Wrong recovered playlist.", List.of("adele-hello"), playlists.songs("test"));
+        }
+    }
+
+    @Test
+    public void testRecoverDropsTornRecord() throws IOException {
+        Files.write(directory.resolve("test.wal"), new byte[] {0, 0, 0, 42, 1, 2}, StandardOpenOption.APPEND);
+
+        try (WriteAheadLog wal = new WriteAheadLog(directory.resolve("test.wal"), WriteAheadLog.Durability.FSYNC, 1)) {
+            UserRepository users = new UserRepository(directory.resolve("users.txt"), wal);
+            PlaylistRepository playlists = new PlaylistRepository(directory.resolve("playlists.txt"), wal);
+            wal.recover(users, playlists);
+            users.register("other@gmail.com", "parola");
+        }
+
+        try (WriteAheadLog wal = new WriteAheadLog(directory.resolve("test.wal"), WriteAheadLog.Durability.FSYNC, 1)) {
+            UserRepository users = new UserRepository(directory.resolve("users.txt"), wal);
+            wal.recover(users);
+
+            assertEquals("Wrong password after a torn record.", "parola", users.password("other@gmail.com"));
+            assertNull("Unexpected user.", users.password("missing@gmail.com"));
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package bg.sofia.uni.fmi.mjt.spotify.streaming;
+
+import org.junit.Test;
+
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SongCacheTest {
+    private static final long SONG_SIZE = 176444;
+
+    @Test
+    public void testGetCachesMappedSong() throws IOException {
+        SongCache cache = new SongCache(2 * SONG_SIZE, song -> 0);
+
+        CachedSong first = cache.get("adele-hello");
+        CachedSong second = cache.get("adele-hello");
+
+        assertSame("Wrong song returned on a hit.", first, second);
+        assertEquals("Wrong number of hits.", 1, cache.hits());
+        assertEquals("Wrong number of misses.", 1, cache.misses());
+    }
+
+    @Test
+    public void testGetEvictsLeastPopularSong() throws IOException {
+        Map<String, Integer> listeners = Map.of("adele-hello", 0, "fletcher-bitter", 3);
+        SongCache cache = new SongCache(SONG_SIZE, listeners::get);
+
+        CachedSong adele = cache.get("adele-hello");
+        cache.get("fletcher-bitter");
+
+        assertNotSame("The evicted song should be mapped again.", adele, cache.get("adele-hello"));
+        assertEquals("Wrong number of misses.", 3, cache.misses());
+    }
+
+    @Test
+    public void testGetMissingSongRetries() {
+        SongCache cache = new SongCache(SONG_SIZE, song -> 0);
+
+        for (int i = 0; i < 2; i++) {
+            try {
+                cache.get("missing-song");
+                fail("A missing song should not be mapped.");
+            } catch (IOException e) {
+                assertEquals("Wrong number of misses.", i + 1, cache.misses());
+            }
+        }
+    }
+
+    @Test
+    public void testSongTooLargeToMapIsStreamedFromFile() throws IOException, UnsupportedAudioFileException {
+        Path large = Path.of("large-song.wav");
+        Files.copy(Path.of("adele-hello.wav"), large);
+        try (RandomAccessFile file = new RandomAccessFile(large.toFile(), "rw")) {
+            file.setLength(3L * 1024 * 1024 * 1024);
+        }
+
+        try {
+            SongCache cache = new SongCache(SONG_SIZE, song -> 0);
+
+            assertNull("A song over 2GB should not be mapped.", cache.get("large-song"));
+            try (AudioStream stream = StreamingMode.MAPPED.open("large-song", cache)) {
+                assertTrue("Wrong stream of a song over 2GB.", stream instanceof ZeroCopyAudioStream);
+            }
+        } finally {
+            Files.delete(large);
+        }
+    }
+}
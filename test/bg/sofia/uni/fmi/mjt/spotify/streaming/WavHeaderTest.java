@@ -0,0 +1,108 @@
+package bg.sofia.uni.fmi.mjt.spotify.streaming;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.sound.sampled.AudioFormat;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.Assert.assertEquals;
+
+public class WavHeaderTest {
+
+    private Path file;
+
+    @Before
+    public void initialize() throws IOException {
+        file = Files.createTempFile("wav-header-test", ".wav");
+    }
+
+    @After
+    public void cleanUp() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public void testParsePcm() throws IOException {
+        Files.write(file, wav(1, 400, 400, false));
+
+        WavHeader header = parse();
+
+        assertEquals("Wrong header.", new WavHeader(1, 2, 44100, 4, 16, 44, 400), header);
+        AudioFormat format = header.toAudioFormat();
+        assertEquals("Wrong encoding.", AudioFormat.Encoding.PCM_SIGNED, format.getEncoding());
+        assertEquals("Wrong frame size.", 4, format.getFrameSize());
+    }
+
+    @Test
+    public void testParseSkipsOtherChunks() throws IOException {
+        Files.write(file, wav(1, 400, 400, true));
+
+        assertEquals("Wrong data offset.", 56, parse().dataOffset());
+    }
+
+    @Test
+    public void testParseTruncatedData() throws IOException {
+        Files.write(file, wav(1, 1000, 100, false));
+
+        assertEquals("Wrong data length of a truncated file.", 100, parse().dataLength());
+    }
+
+    @Test(expected = IOException.class)
+    public void testParseNotWave() throws IOException {
+        Files.write(file, "definitely not a wav file, but long enough".getBytes());
+
+        parse();
+    }
+
+    @Test(expected = IOException.class)
+    public void testParseMissingDataChunk() throws IOException {
+        byte[] wav = wav(1, 0, 0, false);
+        byte[] withoutData = new byte[wav.length - 8];
+        System.arraycopy(wav, 0, withoutData, 0, withoutData.length);
+        Files.write(file, withoutData);
+
+        parse();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testToAudioFormatUnsupportedTag() throws IOException {
+        Files.write(file, wav(2, 400, 400, false));
+
+        parse().toAudioFormat();
+    }
+
+    private WavHeader parse() throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return WavHeader.parse(channel);
+        }
+    }
+
+    /**
+     * @return a 44.1 kHz 16-bit stereo wav file whose data chunk declares declaredLength bytes
+     * and contains dataLength of them
+     */
+    static byte[] wav(int formatTag, int declaredLength, int dataLength, boolean withListChunk) {
+        ByteBuffer wav = ByteBuffer.allocate(56 + dataLength).order(ByteOrder.LITTLE_ENDIAN);
+        wav.put("RIFF".getBytes()).putInt(36 + declaredLength).put("WAVE".getBytes());
+        if (withListChunk) {
+            wav.put("LIST".getBytes()).putInt(3).put(new byte[] {1, 2, 3, 0});
+        }
+        wav.put("fmt ".getBytes()).putInt(16)
+                .putShort((short) formatTag).putShort((short) 2).putInt(44100).putInt(44100 * 4)
+                .putShort((short) 4).putShort((short) 16);
+        wav.put("data".getBytes()).putInt(declaredLength).put(new byte[dataLength]);
+
+        byte[] bytes = new byte[wav.position()];
+        wav.flip().get(bytes);
+        return bytes;
+    }
+}